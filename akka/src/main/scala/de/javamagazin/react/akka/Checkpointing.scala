@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.akka
+
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Path, StandardCopyOption, StandardOpenOption}
+
+import akka.Done
+import akka.stream.stage.{GraphStageLogic, GraphStageWithMaterializedValue, InHandler}
+import akka.stream.{Attributes, IOResult, Inlet, SinkShape}
+import akka.util.ByteString
+
+import scala.concurrent.duration._
+import scala.concurrent.{Future, Promise}
+import scala.util.{Failure, Success}
+
+/**
+  * A class representing a checkpoint of a file processing operation.
+  *
+  * The checkpoint stores the offset in the input file after the last line
+  * whose output has been written completely and the length of the output
+  * file at this point. Processing can be resumed by reading the input from
+  * this offset and appending to the output truncated to this length.
+  *
+  * @param inputOffset  the offset in the input file
+  * @param outputLength the length of the output file
+  */
+case class Checkpoint(inputOffset: Long, outputLength: Long)
+
+object Checkpoint {
+  /** The initial checkpoint to start processing from the beginning. */
+  val Initial = Checkpoint(0, 0)
+
+  /** The suffix of checkpoint files. */
+  val Suffix = ".checkpoint"
+
+  /** The key for the input offset in a checkpoint file. */
+  private val KeyInputOffset = "inputOffset"
+
+  /** The key for the output length in a checkpoint file. */
+  private val KeyOutputLength = "outputLength"
+
+  /**
+    * Returns the path of the checkpoint file for the given output file.
+    *
+    * @param output the path to the output file
+    * @return the path to the checkpoint file
+    */
+  def pathFor(output: Path): Path =
+    output.resolveSibling(output.getFileName.toString + Suffix)
+
+  /**
+    * Reads the checkpoint from the given file. If the file does not exist,
+    * the initial checkpoint is returned.
+    *
+    * @param path the path to the checkpoint file
+    * @return the checkpoint
+    */
+  def read(path: Path): Checkpoint =
+    if (!Files.exists(path)) Initial
+    else {
+      val props = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).split("\n")
+        .map(_.split("=", 2))
+        .collect { case Array(key, value) => key.trim -> value.trim.toLong }
+        .toMap
+      Checkpoint(props(KeyInputOffset), props(KeyOutputLength))
+    }
+
+  /**
+    * Writes a checkpoint to the given file. The data is written to a
+    * temporary file first which then replaces the checkpoint file, so that
+    * there is always a consistent checkpoint.
+    *
+    * @param path       the path to the checkpoint file
+    * @param checkpoint the checkpoint
+    */
+  def write(path: Path, checkpoint: Checkpoint): Unit = {
+    val temp = path.resolveSibling(path.getFileName.toString + ".tmp")
+    Files.write(temp, s"$KeyInputOffset=${checkpoint.inputOffset}\n$KeyOutputLength=${
+      checkpoint.outputLength}\n".getBytes(StandardCharsets.UTF_8))
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+  }
+}
+
+/**
+  * A sink that writes chunks of output to a file and periodically records
+  * checkpoints.
+  *
+  * The sink expects chunks of data together with the offset in the input
+  * file after the last line contained in the chunk. It starts writing at the
+  * output length of the given checkpoint; the output file is truncated to
+  * this length. When the checkpoint interval has elapsed after writing a
+  * chunk, the data is forced to disk, and a new checkpoint is written. When
+  * the stream completes successfully, the checkpoint file is deleted; if it
+  * fails, a final checkpoint is written, so that processing can be resumed.
+  *
+  * The file is written with blocking operations; so the sink should run on
+  * a dispatcher for blocking IO. The materialized value is the result of the
+  * operation with the number of bytes written in this run.
+  *
+  * @param output         the path to the output file
+  * @param checkpointFile the path to the checkpoint file
+  * @param start          the checkpoint to start from
+  * @param interval       the checkpoint interval
+  */
+class CheckpointSink(output: Path, checkpointFile: Path, start: Checkpoint,
+                     interval: FiniteDuration)
+  extends GraphStageWithMaterializedValue[SinkShape[(ByteString, Long)], Future[IOResult]] {
+  val in: Inlet[(ByteString, Long)] = Inlet[(ByteString, Long)]("CheckpointSink.in")
+
+  override val shape: SinkShape[(ByteString, Long)] = SinkShape(in)
+
+  override def createLogicAndMaterializedValue(inheritedAttributes: Attributes):
+  (GraphStageLogic, Future[IOResult]) = {
+    val promise = Promise[IOResult]()
+    val logic = new GraphStageLogic(shape) with InHandler {
+      private var channel: FileChannel = _
+
+      /** The checkpoint reflecting the data written so far. */
+      private var current = start
+
+      /** The time when the last checkpoint was written. */
+      private var lastCheckpointTime = 0L
+
+      /** Flag whether all data has been written successfully. */
+      private var completed = false
+
+      /** The exception which caused the stream to fail. */
+      private var failure: Option[Throwable] = None
+
+      override def preStart(): Unit = {
+        try {
+          channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+          channel.truncate(start.outputLength)
+          channel.position(start.outputLength)
+          lastCheckpointTime = System.nanoTime()
+          pull(in)
+        } catch {
+          case e: Exception => fail(e)
+        }
+      }
+
+      override def onPush(): Unit = {
+        val (data, inputOffset) = grab(in)
+        try {
+          val buffer = data.asByteBuffer
+          while (buffer.hasRemaining) {
+            channel.write(buffer)
+          }
+          current = Checkpoint(inputOffset, current.outputLength + data.length)
+          if (System.nanoTime() - lastCheckpointTime >= interval.toNanos) {
+            checkpoint()
+          }
+          pull(in)
+        } catch {
+          case e: Exception => fail(e)
+        }
+      }
+
+      override def onUpstreamFinish(): Unit = {
+        try {
+          channel.force(false)
+          Files.deleteIfExists(checkpointFile)
+          completed = true
+          completeStage()
+        } catch {
+          case e: Exception => fail(e)
+        }
+      }
+
+      override def onUpstreamFailure(ex: Throwable): Unit = {
+        try {
+          checkpoint()
+        } catch {
+          case e: Exception => ex.addSuppressed(e)
+        }
+        fail(ex)
+      }
+
+      override def postStop(): Unit = {
+        if (channel != null) {
+          channel.close()
+        }
+        val status = if (completed) Success(Done)
+        else Failure(failure getOrElse
+          new IllegalStateException("Checkpoint sink stopped before upstream completed."))
+        promise.success(IOResult(current.outputLength - start.outputLength, status))
+      }
+
+      /**
+        * Records the exception that caused the stream to fail and stops this
+        * stage.
+        *
+        * @param ex the exception
+        */
+      private def fail(ex: Throwable): Unit = {
+        failure = Some(ex)
+        failStage(ex)
+      }
+
+      /**
+        * Forces the data written so far to disk and writes the current
+        * checkpoint.
+        */
+      private def checkpoint(): Unit = {
+        channel.force(false)
+        Checkpoint.write(checkpointFile, current)
+        lastCheckpointTime = System.nanoTime()
+      }
+
+      setHandler(in, this)
+    }
+    (logic, promise.future)
+  }
+}
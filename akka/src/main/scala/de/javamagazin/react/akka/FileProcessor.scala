@@ -15,70 +15,491 @@
  */
 package de.javamagazin.react.akka
 
-import java.nio.file.{Path, Paths}
-import java.util.Locale
+import java.nio.file.{Files, Path, Paths}
 
 import akka.actor.ActorSystem
-import akka.stream.scaladsl.{FileIO, Framing}
-import akka.stream.{ActorMaterializer, IOResult}
+import akka.stream.scaladsl.{FileIO, Flow, Sink, Source}
+import akka.stream.{ActorAttributes, ActorMaterializer, Attributes, IOResult}
 import akka.util.ByteString
 
-import scala.concurrent.{Await, Future}
+import scala.collection.JavaConverters._
 import scala.concurrent.duration._
+import scala.concurrent.{Await, ExecutionContext, Future}
+import scala.util.{Failure, Success, Try}
+
+/**
+  * A class defining options for file processing.
+  *
+  * If a parallelism greater than 1 is set, lines are grouped into batches of
+  * the given size, and the batches are transformed in parallel on a
+  * dedicated dispatcher. By default, the order of the lines is preserved; in
+  * unordered mode, batches are written as soon as they are complete.
+  *
+  * The compression formats of the input and output files are determined
+  * from their file extensions unless they are set explicitly. If a threshold
+  * for bytes or lines is set, the output is split into multiple shard files.
+  *
+  * If a monitoring interval is set, [[MonitorStage]]s are inserted after the
+  * source and in front of the sink which report statistics in this interval.
+  *
+  * If a checkpoint interval is set, the progress of processing is recorded
+  * in a checkpoint file next to the output file, and an interrupted run is
+  * resumed from the last checkpoint; see [[CheckpointSink]]. This is
+  * supported only for sequential processing of uncompressed files without
+  * sharding.
+  *
+  * @param parallelism       the number of batches processed in parallel
+  * @param batchSize         the number of lines in a batch
+  * @param ordered           flag whether the order of lines has to be
+  *                          preserved
+  * @param maxLineLength     the maximum length of a line in bytes
+  * @param inputCompression  the compression format of the input file
+  * @param outputCompression the compression format of the output file
+  * @param shardBytes        the byte threshold for output shards
+  * @param shardLines        the line threshold for output shards
+  * @param fileParallelism   the number of files processed in parallel
+  * @param monitorInterval   the reporting interval for monitoring
+  * @param checkpointInterval the interval for writing checkpoints
+  */
+case class ProcessingOptions(parallelism: Int = 1,
+                             batchSize: Int = ProcessingOptions.DefaultBatchSize,
+                             ordered: Boolean = true,
+                             maxLineLength: Int = LineProcessing.DefaultMaxLineLength,
+                             inputCompression: Option[CompressionFormat] = None,
+                             outputCompression: Option[CompressionFormat] = None,
+                             shardBytes: Long = 0,
+                             shardLines: Long = 0,
+                             fileParallelism: Int = ProcessingOptions.DefaultFileParallelism,
+                             monitorInterval: Option[FiniteDuration] = None,
+                             checkpointInterval: Option[FiniteDuration] = None)
+
+object ProcessingOptions {
+  /** The default number of lines in a batch. */
+  val DefaultBatchSize = 1024
+
+  /** The default number of files processed in parallel. */
+  val DefaultFileParallelism = 4
+
+  /** Command line option for the parallelism. */
+  private val OptParallelism = "--parallelism="
+
+  /** Command line option for the batch size. */
+  private val OptBatchSize = "--batch-size="
+
+  /** Command line option to enable the unordered mode. */
+  private val OptUnordered = "--unordered"
+
+  /** Command line option for the maximum line length. */
+  private val OptMaxLineLength = "--max-line-length="
+
+  /** Command line option for the compression format of the input file. */
+  private val OptInputCompression = "--input-compression="
+
+  /** Command line option for the compression format of the output file. */
+  private val OptOutputCompression = "--output-compression="
+
+  /** Command line option for the byte threshold of output shards. */
+  private val OptShardBytes = "--shard-bytes="
+
+  /** Command line option for the line threshold of output shards. */
+  private val OptShardLines = "--shard-lines="
+
+  /** Command line option for the number of files processed in parallel. */
+  private val OptFileParallelism = "--file-parallelism="
+
+  /** Command line option to enable monitoring with an interval in ms. */
+  private val OptMonitor = "--monitor="
+
+  /** Command line option to enable checkpoints with an interval in ms. */
+  private val OptCheckpoint = "--checkpoint="
+
+  /**
+    * Creates an options object from the given command line options.
+    *
+    * @param args the command line options
+    * @return the options object
+    * @throws IllegalArgumentException if an option is invalid
+    */
+  def parse(args: Seq[String]): ProcessingOptions =
+    args.foldLeft(ProcessingOptions()) { (options, arg) =>
+      if (arg startsWith OptParallelism)
+        options.copy(parallelism = arg.substring(OptParallelism.length).toInt)
+      else if (arg startsWith OptBatchSize)
+        options.copy(batchSize = positive(OptBatchSize, arg.substring(OptBatchSize.length).toInt))
+      else if (arg == OptUnordered) options.copy(ordered = false)
+      else if (arg startsWith OptMaxLineLength)
+        options.copy(maxLineLength = arg.substring(OptMaxLineLength.length).toInt)
+      else if (arg startsWith OptInputCompression)
+        options.copy(inputCompression =
+          Some(CompressionFormat(arg.substring(OptInputCompression.length))))
+      else if (arg startsWith OptOutputCompression)
+        options.copy(outputCompression =
+          Some(CompressionFormat(arg.substring(OptOutputCompression.length))))
+      else if (arg startsWith OptShardBytes)
+        options.copy(shardBytes = arg.substring(OptShardBytes.length).toLong)
+      else if (arg startsWith OptShardLines)
+        options.copy(shardLines = arg.substring(OptShardLines.length).toLong)
+      else if (arg startsWith OptFileParallelism)
+        options.copy(fileParallelism = arg.substring(OptFileParallelism.length).toInt)
+      else if (arg startsWith OptMonitor)
+        options.copy(monitorInterval = Some(arg.substring(OptMonitor.length).toLong.millis))
+      else if (arg startsWith OptCheckpoint)
+        options.copy(checkpointInterval =
+          Some(arg.substring(OptCheckpoint.length).toLong.millis))
+      else throw new IllegalArgumentException("Unknown option: " + arg)
+    }
+
+  /**
+    * Checks that the value of a numeric option is positive.
+    *
+    * @param option the option
+    * @param value  the value of the option
+    * @return the value if it is valid
+    * @throws IllegalArgumentException if the value is not positive
+    */
+  private def positive(option: String, value: Int): Int = {
+    if (value <= 0)
+      throw new IllegalArgumentException(s"Value of option ${option.dropRight(1)} must be " +
+        s"positive: $value")
+    value
+  }
+}
+
+/**
+  * A class representing the result of processing a single file.
+  *
+  * @param input  the path to the input file
+  * @param output the path to the output file
+  * @param result the result of the operation
+  */
+case class FileResult(input: Path, output: Path, result: Try[IOResult]) {
+  /**
+    * Returns a flag whether the file was processed successfully.
+    *
+    * @return the success flag
+    */
+  def successful: Boolean = result.isSuccess && result.get.wasSuccessful
+
+  /**
+    * Returns the exception that caused processing to fail or
+    * ''None'' if processing was successful.
+    *
+    * @return an option with the failure
+    */
+  def failure: Option[Throwable] = result match {
+    case Success(r) => r.status.failed.toOption
+    case Failure(e) => Some(e)
+  }
+}
+
+/**
+  * A class summarizing the results of processing multiple files.
+  *
+  * @param bytesWritten the total number of bytes written
+  * @param results      the results of the single files
+  */
+case class ProcessingSummary(bytesWritten: Long = 0, results: List[FileResult] = Nil) {
+  /**
+    * Returns a new summary which contains the given file result.
+    *
+    * @param result the result to be added
+    * @return the updated summary
+    */
+  def +(result: FileResult): ProcessingSummary =
+    ProcessingSummary(bytesWritten + result.result.map(_.count).getOrElse(0L),
+      result :: results)
+
+  /**
+    * Returns the results of the files that could not be processed.
+    *
+    * @return the failed results
+    */
+  def failures: List[FileResult] = results filterNot (_.successful)
+}
 
 /**
   * Example class for processing a file using Akka's streaming API.
   *
   * The file is read chunk-wise and split into single lines. Empty lines and
   * comment lines are filtered out. The lines are then converted to lowercase
-  * and written to a target file.
+  * and written to a target file. These transformations are done on the byte
+  * level by the stages in [[LineProcessing]]; lines must not exceed a
+  * maximum length.
+  *
+  * Optionally, the lines can be transformed in parallel. Input and output
+  * files can be compressed, and the output can be split into multiple
+  * shards; see [[ProcessingOptions]] and [[FileStreams]].
+  *
+  * Multiple files can be processed with a single stream; each file is
+  * processed by a substream, and the number of files processed in parallel
+  * is limited. A failure in one file does not affect the others.
   *
   * The main function expects the paths to the input and output files as
-  * arguments.
+  * arguments. The input can also be a directory or a glob pattern for file
+  * names (e.g. ''data-*.gz''); then all matching files are processed, and
+  * the output is a directory. The paths can be followed by the options
+  * ''--parallelism=<n>'', ''--batch-size=<n>'', ''--unordered'',
+  * ''--max-line-length=<n>'', ''--input-compression=<format>'',
+  * ''--output-compression=<format>'', ''--shard-bytes=<n>'',
+  * ''--shard-lines=<n>'', ''--file-parallelism=<n>'',
+  * ''--monitor=<interval in ms>'', and ''--checkpoint=<interval in ms>''.
   */
 object FileProcessor {
-  /** Comment start prefix. */
-  private val CommentPrefix = "#"
+  /** The name of the dispatcher for parallel processing. */
+  val DispatcherName = "file-processor-dispatcher"
+
+  /** The size of chunks read from the input file in checkpoint mode. */
+  private val CheckpointChunkSize = 8192
 
   def main(args: Array[String]): Unit = {
-    if (args.length != 2) {
-      println("Usage: FileProcessor <inputFile> <outputFile>")
+    if (args.length < 2) {
+      println("Usage: FileProcessor <input> <output> [--parallelism=<n>] " +
+        "[--batch-size=<n>] [--unordered] [--max-line-length=<n>] " +
+        "[--input-compression=none|gzip|deflate] [--output-compression=none|gzip|deflate] " +
+        "[--shard-bytes=<n>] [--shard-lines=<n>] [--file-parallelism=<n>] [--monitor=<ms>] " +
+        "[--checkpoint=<ms>]")
       System.exit(1)
     }
+    val options = ProcessingOptions.parse(args.drop(2))
 
     implicit val system: ActorSystem = ActorSystem("FileProcessingSystem")
     try {
       implicit val mat: ActorMaterializer = ActorMaterializer()
-      val futureResult = processFile(Paths.get(args.head), Paths.get(args(1)))
+      val files = resolveFiles(args.head, Paths.get(args(1)))
+      files foreach { case (input, output) => println(s"Processing $input to $output.") }
+      val futureResult = processFiles(files, options)
 
       // Block to get the result of this test driver.
       // This is of course no reactive style!
-      val result = Await.result(futureResult, 10.seconds)
-      println(s"Written ${result.count} bytes.")
+      val summary = Await.result(futureResult, Duration.Inf)
+      println(s"Processed ${summary.results.size} file(s), written ${summary.bytesWritten} bytes.")
+      summary.failures foreach { f =>
+        println(s"Failed: ${f.input}: ${f.failure.map(_.getMessage).orNull}")
+      }
+      StreamMetrics(system).snapshot.values.toList.sortBy(_.name) foreach println
     } finally {
       Await.result(system.terminate(), 10.seconds)
       println("Actor system terminated.")
     }
   }
 
+  /**
+    * Determines the files to be processed and their output files. The input
+    * can be a single file, a directory, or a glob pattern for the names of
+    * files in a directory. If it is a single file, the output is a file,
+    * too, unless it is an existing directory. Otherwise, the output is a
+    * directory (which is created if necessary) which receives output files
+    * with the names of the input files. As the output is written while the
+    * input is read, an output file must not be its own input file; so the
+    * output file must differ from a single input file, and the output
+    * directory must differ from the directory of the input files.
+    *
+    * @param input  the input specification
+    * @param output the output path
+    * @return a list with pairs of input and output files
+    * @throws IllegalArgumentException if an output file equals its input file
+    */
+  def resolveFiles(input: String, output: Path): List[(Path, Path)] = {
+    val inputPath = Paths.get(input)
+    if (Files.isRegularFile(inputPath)) {
+      val outputFile = if (Files.isDirectory(output)) output.resolve(inputPath.getFileName)
+      else output
+      checkDistinct(inputPath, outputFile)
+      List((inputPath, outputFile))
+    } else {
+      val inputDir = if (Files.isDirectory(inputPath)) inputPath
+      else Option(inputPath.getParent) getOrElse Paths.get(".")
+      checkDistinct(inputDir, output)
+      val inputFiles = if (Files.isDirectory(inputPath)) listFiles(inputPath, "*")
+      else listFiles(inputDir, inputPath.getFileName.toString)
+      Files.createDirectories(output)
+      inputFiles map (f => (f, output.resolve(f.getFileName)))
+    }
+  }
+
+  /**
+    * Checks that an output path does not refer to the same file or directory
+    * as an input path.
+    *
+    * @param input  the input path
+    * @param output the output path
+    * @throws IllegalArgumentException if both paths are the same
+    */
+  private def checkDistinct(input: Path, output: Path): Unit = {
+    val same = if (Files.exists(input) && Files.exists(output)) Files.isSameFile(input, output)
+    else input.toAbsolutePath.normalize == output.toAbsolutePath.normalize
+    if (same)
+      throw new IllegalArgumentException(s"Output $output must not be the same as input $input.")
+  }
+
+  /**
+    * Processes multiple files in parallel. Each file is processed by
+    * [[processFile]]; at most ''fileParallelism'' files are processed at the
+    * same time. The results are collected in a summary; failures of single
+    * files are recorded in the summary, but do not cancel the processing of
+    * the other files.
+    *
+    * @param files   a list with pairs of input and output files
+    * @param options options for processing
+    * @param system  the actor system
+    * @param mat     the object to materialize a stream
+    * @return a ''Future'' with the summary
+    */
+  def processFiles(files: List[(Path, Path)], options: ProcessingOptions = ProcessingOptions())
+                  (implicit system: ActorSystem, mat: ActorMaterializer):
+  Future[ProcessingSummary] = {
+    import system.dispatcher
+    Source(files)
+      .mapAsyncUnordered(options.fileParallelism) { case (input, output) =>
+        Future(processFile(input, output, options)).flatMap(identity)
+          .map(Success(_))
+          .recover { case e => Failure(e) }
+          .map(FileResult(input, output, _))
+      }.runFold(ProcessingSummary())(_ + _)
+  }
+
   /**
     * Implements file processing.
     *
-    * @param input  path to the input file
-    * @param output path to the output file
-    * @param system the actor system
-    * @param mat    the object to materialize a stream
+    * @param input   path to the input file
+    * @param output  path to the output file
+    * @param options options for processing
+    * @param system  the actor system
+    * @param mat     the object to materialize a stream
+    * @return a ''Future'' with the processing result
+    */
+  def processFile(input: Path, output: Path, options: ProcessingOptions = ProcessingOptions())
+                 (implicit system: ActorSystem, mat: ActorMaterializer): Future[IOResult] =
+    options.checkpointInterval match {
+      case Some(interval) => processFileCheckpointed(input, output, options, interval)
+      case None => processFileStreamed(input, output, options)
+    }
+
+  /**
+    * Implements file processing without checkpoints.
+    *
+    * @param input   path to the input file
+    * @param output  path to the output file
+    * @param options options for processing
+    * @param system  the actor system
+    * @param mat     the object to materialize a stream
     * @return a ''Future'' with the processing result
     */
-  def processFile(input: Path, output: Path)(implicit system: ActorSystem,
-                                             mat: ActorMaterializer): Future[IOResult] = {
-    println(s"Processing $input to $output.")
-    val source = FileIO.fromPath(input)
-    val sink = FileIO.toPath(output)
-    source.via(Framing.delimiter(ByteString("\r"), 1024, allowTruncation = true))
-      .map(_.utf8String.trim)
-      .filter(s => s.length > 0 && !s.startsWith(CommentPrefix))
-      .map(s => ByteString(s.toLowerCase(Locale.ENGLISH) + System.lineSeparator()))
+  private def processFileStreamed(input: Path, output: Path, options: ProcessingOptions)
+                                 (implicit system: ActorSystem, mat: ActorMaterializer):
+  Future[IOResult] = {
+    system.log.debug("Processing {} to {}.", input, output)
+    val source = FileStreams.source(input,
+      options.inputCompression getOrElse CompressionFormat.forPath(input))
+    val sink = FileStreams.sink(output,
+      options.outputCompression getOrElse CompressionFormat.forPath(output),
+      options.shardBytes, options.shardLines)
+    source.via(monitor(input, "read", options))
+      .via(if (options.parallelism > 1) parallelTransform(options)
+      else new LineProcessingStage(options.maxLineLength))
+      .via(monitor(input, "transform", options))
       .runWith(sink)
   }
+
+  /**
+    * Implements file processing with checkpoints. If there is a checkpoint
+    * from an earlier run, reading starts at the input offset stored in the
+    * checkpoint, and the output is appended to the output file truncated to
+    * the length stored in the checkpoint. The result contains the number of
+    * bytes written in this run.
+    *
+    * @param input    path to the input file
+    * @param output   path to the output file
+    * @param options  options for processing
+    * @param interval the checkpoint interval
+    * @param system   the actor system
+    * @param mat      the object to materialize a stream
+    * @return a ''Future'' with the processing result
+    * @throws IllegalArgumentException if checkpoints are not supported for
+    *                                  the given options
+    */
+  private def processFileCheckpointed(input: Path, output: Path, options: ProcessingOptions,
+                                      interval: FiniteDuration)
+                                     (implicit system: ActorSystem, mat: ActorMaterializer):
+  Future[IOResult] = {
+    val compressed =
+      (options.inputCompression getOrElse CompressionFormat.forPath(input)) !=
+        CompressionFormat.Uncompressed ||
+        (options.outputCompression getOrElse CompressionFormat.forPath(output)) !=
+          CompressionFormat.Uncompressed
+    if (options.parallelism > 1 || compressed || options.shardBytes > 0 || options.shardLines > 0)
+      throw new IllegalArgumentException("Checkpoints are only supported for sequential " +
+        "processing of uncompressed files without sharding.")
+
+    val checkpointFile = Checkpoint.pathFor(output)
+    val checkpoint = Checkpoint.read(checkpointFile)
+    if (checkpoint == Checkpoint.Initial) system.log.debug("Processing {} to {}.", input, output)
+    else system.log.info("Resuming processing of {} to {} at input offset {}, output length {}.",
+      input, output, checkpoint.inputOffset, checkpoint.outputLength)
+
+    FileIO.fromPath(input, CheckpointChunkSize, checkpoint.inputOffset)
+      .via(monitor(input, "read", options))
+      .via(new OffsetLineProcessingStage(checkpoint.inputOffset, options.maxLineLength))
+      .runWith(Sink.fromGraph(new CheckpointSink(output, checkpointFile, checkpoint, interval))
+        .withAttributes(Attributes(ActorAttributes.IODispatcher)).async)
+  }
+
+  /**
+    * Returns a flow to monitor a part of the processing stream of a file.
+    * If monitoring is disabled, this is a flow that does nothing.
+    *
+    * @param input   path to the input file
+    * @param part    the name of the part of the stream
+    * @param options options for processing
+    * @param system  the actor system
+    * @return the flow
+    */
+  private def monitor(input: Path, part: String, options: ProcessingOptions)
+                     (implicit system: ActorSystem): Flow[ByteString, ByteString, _] =
+    options.monitorInterval match {
+      case Some(interval) =>
+        Flow[ByteString].via(MonitorStage.bytes(s"${input.getFileName}/$part",
+          StreamMetrics(system), interval))
+      case None => Flow[ByteString]
+    }
+
+  /**
+    * Returns a flow that groups lines into batches and transforms them in
+    * parallel on the dedicated dispatcher. Each batch results in a single
+    * chunk of output.
+    *
+    * @param options options for processing
+    * @param system  the actor system
+    * @return the flow
+    */
+  private def parallelTransform(options: ProcessingOptions)(implicit system: ActorSystem):
+  Flow[ByteString, ByteString, _] = {
+    implicit val ec: ExecutionContext = system.dispatchers.lookup(DispatcherName)
+    val batches = Flow[ByteString].via(new LineFramingStage(options.maxLineLength))
+      .grouped(options.batchSize)
+    val transformBatch = (batch: Seq[ByteString]) => Future(LineProcessing.transformLines(batch))
+    if (options.ordered) batches.mapAsync(options.parallelism)(transformBatch)
+    else batches.mapAsyncUnordered(options.parallelism)(transformBatch)
+  }
+
+  /**
+    * Returns the regular files in a directory whose names match a glob
+    * pattern, sorted by name.
+    *
+    * @param dir     the directory
+    * @param pattern the glob pattern
+    * @return the list with matching files
+    */
+  private def listFiles(dir: Path, pattern: String): List[Path] = {
+    val matcher = dir.getFileSystem.getPathMatcher("glob:" + pattern)
+    val stream = Files.list(dir)
+    try {
+      stream.iterator().asScala
+        .filter(p => Files.isRegularFile(p) && matcher.matches(p.getFileName))
+        .toList
+        .sortBy(_.getFileName.toString)
+    } finally {
+      stream.close()
+    }
+  }
 }
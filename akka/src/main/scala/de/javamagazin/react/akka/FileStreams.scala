@@ -0,0 +1,231 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.akka
+
+import java.nio.file.Path
+
+import akka.stream.scaladsl.{Compression, FileIO, Flow, Keep, Sink, Source}
+import akka.stream.{IOResult, Materializer}
+import akka.util.ByteString
+import akka.{Done, NotUsed}
+
+import scala.concurrent.Future
+import scala.util.Success
+
+/**
+  * A class representing a compression format for files.
+  *
+  * @param name the name of the format
+  */
+sealed abstract class CompressionFormat(val name: String) {
+  /**
+    * Returns a flow that compresses data in this format.
+    *
+    * @return the compressing flow
+    */
+  def compress: Flow[ByteString, ByteString, NotUsed]
+
+  /**
+    * Returns a flow that decompresses data in this format.
+    *
+    * @return the decompressing flow
+    */
+  def decompress: Flow[ByteString, ByteString, NotUsed]
+}
+
+object CompressionFormat {
+
+  /** Format for uncompressed files. */
+  case object Uncompressed extends CompressionFormat("none") {
+    override def compress: Flow[ByteString, ByteString, NotUsed] = Flow[ByteString]
+
+    override def decompress: Flow[ByteString, ByteString, NotUsed] = Flow[ByteString]
+  }
+
+  /** The gzip format. */
+  case object Gzip extends CompressionFormat("gzip") {
+    override def compress: Flow[ByteString, ByteString, NotUsed] = Compression.gzip
+
+    override def decompress: Flow[ByteString, ByteString, NotUsed] = Compression.gunzip()
+  }
+
+  /** The deflate format. */
+  case object Deflate extends CompressionFormat("deflate") {
+    override def compress: Flow[ByteString, ByteString, NotUsed] = Compression.deflate
+
+    override def decompress: Flow[ByteString, ByteString, NotUsed] = Compression.inflate()
+  }
+
+  /** A list with all supported formats. */
+  val Formats = List(Uncompressed, Gzip, Deflate)
+
+  /**
+    * Returns the format with the given name.
+    *
+    * @param name the name
+    * @return the format with this name
+    * @throws IllegalArgumentException if the name is unknown
+    */
+  def apply(name: String): CompressionFormat =
+    Formats.find(_.name == name) getOrElse {
+      throw new IllegalArgumentException("Unknown compression format: " + name)
+    }
+
+  /**
+    * Determines the format of a file based on its extension: files ending on
+    * ''.gz'' are in gzip format, files ending on ''.deflate'' in deflate
+    * format; all other files are uncompressed.
+    *
+    * @param path the path to the file
+    * @return the format of this file
+    */
+  def forPath(path: Path): CompressionFormat = {
+    val name = path.getFileName.toString
+    if (name endsWith ".gz") Gzip
+    else if (name endsWith ".deflate") Deflate
+    else Uncompressed
+  }
+}
+
+/**
+  * Functions to create sources and sinks for files which support compression
+  * and splitting output into multiple shard files.
+  */
+object FileStreams {
+
+  /**
+    * Internal class representing a chunk of data in a shard.
+    *
+    * @param index the index of the shard
+    * @param data  the data
+    * @param first flag whether this is the first chunk of the shard
+    */
+  private case class ShardChunk(index: Int, data: ByteString, first: Boolean)
+
+  /**
+    * Returns a source for the content of a file which is decompressed if
+    * necessary.
+    *
+    * @param path        the path to the file
+    * @param compression the compression format of the file
+    * @return the source
+    */
+  def source(path: Path, compression: CompressionFormat): Source[ByteString, Future[IOResult]] =
+    FileIO.fromPath(path).via(compression.decompress)
+
+  /**
+    * Returns a sink writing data to a file which is compressed if
+    * necessary. If a threshold for bytes or lines is defined, the data is
+    * split into multiple shard files, each of which is compressed
+    * separately. A new shard is started at the first line end after the
+    * current shard has reached one of the thresholds. The name of a shard file
+    * is derived from the given path by adding the index of the shard to the
+    * base name, e.g. ''out.txt'' becomes ''out-00000.txt'', ''out-00001.txt'',
+    * and so on. The result of the sink contains the bytes written to all
+    * files.
+    *
+    * @param path        the path to the output file
+    * @param compression the compression format
+    * @param shardBytes  the byte threshold for shards (0 for no threshold)
+    * @param shardLines  the line threshold for shards (0 for no threshold)
+    * @param mat         the object to materialize streams for shards
+    * @return the sink
+    */
+  def sink(path: Path, compression: CompressionFormat, shardBytes: Long = 0,
+           shardLines: Long = 0)(implicit mat: Materializer): Sink[ByteString, Future[IOResult]] =
+    if (shardBytes <= 0 && shardLines <= 0)
+      compression.compress.toMat(FileIO.toPath(path))(Keep.right)
+    else
+      Flow[ByteString].statefulMapConcat(() => shardSplitter(shardBytes, shardLines))
+        .splitWhen(_.first)
+        .prefixAndTail(1)
+        .mapAsync(1) { case (head, tail) =>
+          Source(head).concat(tail)
+            .map(_.data)
+            .via(compression.compress)
+            .runWith(FileIO.toPath(shardPath(path, head.head.index)))
+        }
+        .mergeSubstreams
+        .toMat(Sink.fold(IOResult(0, Success(Done)))(combine))(Keep.right)
+
+  /**
+    * Returns the path of a shard file.
+    *
+    * @param path  the path to the output file
+    * @param index the index of the shard
+    * @return the path to the shard file
+    */
+  def shardPath(path: Path, index: Int): Path = {
+    val name = path.getFileName.toString
+    val pos = name.indexOf('.', 1)
+    val (base, ext) = if (pos < 0) (name, "") else name.splitAt(pos)
+    path.resolveSibling(f"$base-$index%05d$ext")
+  }
+
+  /**
+    * Returns a function that splits chunks of data into [[ShardChunk]]
+    * objects according to the given thresholds. The chunks must contain
+    * complete lines.
+    *
+    * @param shardBytes the byte threshold for shards
+    * @param shardLines the line threshold for shards
+    * @return the splitting function
+    */
+  private def shardSplitter(shardBytes: Long, shardLines: Long): ByteString => List[ShardChunk] = {
+    var index = 0
+    var bytes = 0L
+    var lines = 0L
+    var first = true
+
+    chunk => {
+      val result = List.newBuilder[ShardChunk]
+      val it = chunk.iterator
+      var start = 0
+      var pos = 0
+      while (it.hasNext) {
+        pos += 1
+        if (it.next() == '\n') {
+          lines += 1
+          if ((shardBytes > 0 && bytes + pos - start >= shardBytes) ||
+            (shardLines > 0 && lines >= shardLines)) {
+            result += ShardChunk(index, chunk.slice(start, pos), first)
+            index += 1
+            bytes = 0
+            lines = 0
+            first = true
+            start = pos
+          }
+        }
+      }
+      if (start < chunk.length) {
+        result += ShardChunk(index, chunk.drop(start), first)
+        bytes += chunk.length - start
+        first = false
+      }
+      result.result()
+    }
+  }
+
+  /**
+    * Combines the results of writing two files.
+    *
+    * @param r1 the first result
+    * @param r2 the second result
+    * @return the combined result
+    */
+  private def combine(r1: IOResult, r2: IOResult): IOResult =
+    IOResult(r1.count + r2.count, if (r1.wasSuccessful) r2.status else r1.status)
+}
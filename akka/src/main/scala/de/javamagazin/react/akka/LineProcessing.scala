@@ -0,0 +1,330 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.akka
+
+import java.nio.charset.StandardCharsets
+import java.util.Locale
+
+import akka.stream.scaladsl.Framing.FramingException
+import akka.stream.stage.{GraphStage, GraphStageLogic, InHandler, OutHandler}
+import akka.stream.{Attributes, FlowShape, Inlet, Outlet}
+import akka.util.{ByteString, ByteStringBuilder}
+
+/**
+  * Functions for transforming lines on the byte level.
+  *
+  * A line is trimmed, and empty lines and comment lines are dropped. The
+  * remaining lines are converted to lowercase and terminated by the platform
+  * line separator. This is done directly on the bytes of the line: ASCII
+  * characters are lowercased in place; only lines containing non-ASCII
+  * characters are decoded to strings. The result is the same as if the lines
+  * were decoded as UTF-8 and processed as strings.
+  */
+object LineProcessing {
+  /** The default maximum length of a line in bytes. */
+  val DefaultMaxLineLength = 8192
+
+  /** The byte starting a comment line. */
+  private val CommentPrefix = '#'.toByte
+
+  /** The bytes of the line separator. */
+  private val LineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8)
+
+  /**
+    * Transforms a single line and appends the result (if any) to the given
+    * builder. Note that the array with the data of the line may be modified.
+    *
+    * @param data  the array with the line
+    * @param from  the start index of the line
+    * @param until the end index of the line (exclusive)
+    * @param out   the builder for the output
+    */
+  def transformLine(data: Array[Byte], from: Int, until: Int, out: ByteStringBuilder): Unit = {
+    var start = from
+    var end = until
+    while (start < end && isWhitespace(data(start))) start += 1
+    while (end > start && isWhitespace(data(end - 1))) end -= 1
+
+    if (start < end && data(start) != CommentPrefix) {
+      var ascii = true
+      var i = start
+      while (i < end) {
+        val b = data(i)
+        if (b < 0) ascii = false
+        else if (b >= 'A' && b <= 'Z') data(i) = (b + ('a' - 'A')).toByte
+        i += 1
+      }
+
+      if (ascii) out.putBytes(data, start, end - start)
+      else out.putBytes(new String(data, start, end - start, StandardCharsets.UTF_8)
+        .toLowerCase(Locale.ENGLISH).getBytes(StandardCharsets.UTF_8))
+      out.putBytes(LineSeparator)
+    }
+  }
+
+  /**
+    * Transforms a batch of lines and concatenates the results.
+    *
+    * @param lines the lines of the batch
+    * @return the output for this batch
+    */
+  def transformLines(lines: Seq[ByteString]): ByteString = {
+    val builder = ByteString.newBuilder
+    lines foreach { line =>
+      val data = line.toArray
+      transformLine(data, 0, data.length, builder)
+    }
+    builder.result()
+  }
+
+  /**
+    * Checks whether a byte is whitespace in the sense of ''String.trim()'',
+    * i.e. a control character or a space.
+    *
+    * @param b the byte
+    * @return a flag whether this byte is whitespace
+    */
+  private def isWhitespace(b: Byte): Boolean = (b & 0xFF) <= ' '
+}
+
+/**
+  * A helper class that splits chunks of data into lines.
+  *
+  * Lines can be terminated by ''\n'', ''\r'', or ''\r\n''. (In the latter
+  * case, an empty line is reported between the two terminators.) Incomplete
+  * lines at the end of a chunk are kept until the next chunk arrives. If a
+  * line exceeds the maximum length, a ''FramingException'' is thrown.
+  *
+  * @param maxLineLength the maximum length of a line in bytes
+  */
+private class LineSplitter(maxLineLength: Int) {
+  /** The incomplete line from the last chunk. */
+  private var remainder = Array.emptyByteArray
+
+  /**
+    * Splits a chunk of data and invokes the given function for each complete
+    * line. The function is passed the array with the data and the indices
+    * of the line.
+    *
+    * @param chunk the chunk
+    * @param f     the function to process lines
+    */
+  def split(chunk: ByteString)(f: (Array[Byte], Int, Int) => Unit): Unit = {
+    val data = if (remainder.length == 0) chunk.toArray
+    else {
+      val combined = new Array[Byte](remainder.length + chunk.length)
+      System.arraycopy(remainder, 0, combined, 0, remainder.length)
+      chunk.copyToArray(combined, remainder.length)
+      combined
+    }
+
+    var lineStart = 0
+    var i = 0
+    while (i < data.length) {
+      val b = data(i)
+      if (b == '\n' || b == '\r') {
+        checkLength(i - lineStart)
+        f(data, lineStart, i)
+        lineStart = i + 1
+      }
+      i += 1
+    }
+    checkLength(data.length - lineStart)
+    remainder = java.util.Arrays.copyOfRange(data, lineStart, data.length)
+  }
+
+  /**
+    * Invokes the given function for the last line if it is not terminated
+    * by a line separator.
+    *
+    * @param f the function to process lines
+    */
+  def finish(f: (Array[Byte], Int, Int) => Unit): Unit = {
+    if (remainder.length > 0) {
+      f(remainder, 0, remainder.length)
+      remainder = Array.emptyByteArray
+    }
+  }
+
+  /**
+    * Returns the number of bytes of an incomplete line that are kept until
+    * the next chunk arrives.
+    *
+    * @return the number of pending bytes
+    */
+  def pending: Int = remainder.length
+
+  /**
+    * Checks whether a line exceeds the maximum length.
+    *
+    * @param length the length of the line
+    */
+  private def checkLength(length: Int): Unit = {
+    if (length > maxLineLength) {
+      throw new FramingException(s"Line exceeds maximum length of $maxLineLength bytes.")
+    }
+  }
+}
+
+/**
+  * An abstract base class for stages that transform a stream of chunks of
+  * data line by line using [[LineProcessing.transformLine]].
+  *
+  * For each incoming chunk, an element with the transformed complete lines is
+  * emitted. So there are no allocations per line. Concrete subclasses define
+  * the type of the elements; they are passed the output of a chunk and the
+  * number of input bytes consumed so far (i.e. the offset after the last
+  * complete line).
+  *
+  * @param name          the name of the stage
+  * @param maxLineLength the maximum length of a line in bytes
+  * @tparam Out the type of the elements produced by this stage
+  */
+abstract class AbstractLineProcessingStage[Out](name: String, maxLineLength: Int)
+  extends GraphStage[FlowShape[ByteString, Out]] {
+  val in: Inlet[ByteString] = Inlet[ByteString](name + ".in")
+  val out: Outlet[Out] = Outlet[Out](name + ".out")
+
+  override val shape: FlowShape[ByteString, Out] = FlowShape(in, out)
+
+  /**
+    * Creates the element to be emitted for the output of a chunk.
+    *
+    * @param data     the transformed lines
+    * @param consumed the number of input bytes consumed so far
+    * @return the element to be emitted
+    */
+  protected def createOutput(data: ByteString, consumed: Long): Out
+
+  override def createLogic(inheritedAttributes: Attributes): GraphStageLogic =
+    new GraphStageLogic(shape) with InHandler with OutHandler {
+      private val splitter = new LineSplitter(maxLineLength)
+
+      private val builder = ByteString.newBuilder
+
+      private val transform: (Array[Byte], Int, Int) => Unit =
+        LineProcessing.transformLine(_, _, _, builder)
+
+      /** The number of input bytes received so far. */
+      private var received = 0L
+
+      override def onPush(): Unit = {
+        val chunk = grab(in)
+        received += chunk.length
+        splitter.split(chunk)(transform)
+        if (builder.isEmpty) pull(in)
+        else push(out, createOutput(result(), received - splitter.pending))
+      }
+
+      override def onUpstreamFinish(): Unit = {
+        splitter.finish(transform)
+        if (builder.nonEmpty) emit(out, createOutput(result(), received))
+        completeStage()
+      }
+
+      override def onPull(): Unit = {
+        pull(in)
+      }
+
+      /**
+        * Returns the output collected so far and resets the builder.
+        *
+        * @return the output
+        */
+      private def result(): ByteString = {
+        val output = builder.result()
+        builder.clear()
+        output
+      }
+
+      setHandlers(in, out, this)
+    }
+}
+
+/**
+  * A stage that transforms a stream of chunks of data line by line using
+  * [[LineProcessing.transformLine]]. For each incoming chunk, a chunk with
+  * the transformed complete lines is emitted.
+  *
+  * @param maxLineLength the maximum length of a line in bytes
+  */
+class LineProcessingStage(maxLineLength: Int = LineProcessing.DefaultMaxLineLength)
+  extends AbstractLineProcessingStage[ByteString]("LineProcessingStage", maxLineLength) {
+  override protected def createOutput(data: ByteString, consumed: Long): ByteString = data
+}
+
+/**
+  * A stage that transforms a stream of chunks of data line by line like
+  * [[LineProcessingStage]], but emits each chunk of output together with the
+  * offset in the input file after the last line contained in the chunk. The
+  * stream can later be resumed at this offset without losing or duplicating
+  * lines.
+  *
+  * @param startOffset   the offset in the input file at which reading starts
+  * @param maxLineLength the maximum length of a line in bytes
+  */
+class OffsetLineProcessingStage(startOffset: Long,
+                                maxLineLength: Int = LineProcessing.DefaultMaxLineLength)
+  extends AbstractLineProcessingStage[(ByteString, Long)]("OffsetLineProcessingStage",
+    maxLineLength) {
+  override protected def createOutput(data: ByteString, consumed: Long): (ByteString, Long) =
+    (data, startOffset + consumed)
+}
+
+/**
+  * A stage that splits a stream of chunks of data into lines. The lines are
+  * emitted without their terminators; they can then be transformed via
+  * [[LineProcessing.transformLines]].
+  *
+  * @param maxLineLength the maximum length of a line in bytes
+  */
+class LineFramingStage(maxLineLength: Int = LineProcessing.DefaultMaxLineLength)
+  extends GraphStage[FlowShape[ByteString, ByteString]] {
+  val in: Inlet[ByteString] = Inlet[ByteString]("LineFramingStage.in")
+  val out: Outlet[ByteString] = Outlet[ByteString]("LineFramingStage.out")
+
+  override val shape: FlowShape[ByteString, ByteString] = FlowShape(in, out)
+
+  override def createLogic(inheritedAttributes: Attributes): GraphStageLogic =
+    new GraphStageLogic(shape) with InHandler with OutHandler {
+      private val splitter = new LineSplitter(maxLineLength)
+
+      private val lines = Vector.newBuilder[ByteString]
+
+      private val collect: (Array[Byte], Int, Int) => Unit =
+        (data, from, until) => lines += ByteString.fromArray(data, from, until - from)
+
+      override def onPush(): Unit = {
+        splitter.split(grab(in))(collect)
+        val result = lines.result()
+        lines.clear()
+        if (result.isEmpty) pull(in)
+        else emitMultiple(out, result)
+      }
+
+      override def onUpstreamFinish(): Unit = {
+        splitter.finish(collect)
+        emitMultiple(out, lines.result())
+        completeStage()
+      }
+
+      override def onPull(): Unit = {
+        pull(in)
+      }
+
+      setHandlers(in, out, this)
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.akka
+
+import java.util.concurrent.ConcurrentHashMap
+
+import akka.actor.{ActorSystem, ExtendedActorSystem, Extension, ExtensionId, ExtensionIdProvider}
+import akka.stream.stage._
+import akka.stream.{Attributes, FlowShape, Inlet, Outlet}
+import akka.util.ByteString
+
+import scala.collection.JavaConverters._
+import scala.concurrent.duration._
+
+/**
+  * A class with statistics about the elements that passed a
+  * [[MonitorStage]].
+  *
+  * The counters and wait times are totals since the start of the stream;
+  * the rates and the wait ratios refer to the last reporting interval. The
+  * upstream wait is the time the stage waited for an element after it had
+  * been requested; the downstream wait is the time an element could not be
+  * passed on because there was no demand.
+  *
+  * @param name                the name of the monitored stage
+  * @param elements            the number of elements
+  * @param bytes               the number of bytes
+  * @param upstreamWait        the total time waiting on upstream data
+  * @param downstreamWait      the total time waiting on downstream demand
+  * @param elementsPerSecond   the number of elements per second
+  * @param bytesPerSecond      the number of bytes per second
+  * @param upstreamWaitRatio   the fraction of time waiting on upstream data
+  * @param downstreamWaitRatio the fraction of time waiting on downstream
+  *                            demand
+  * @param completed           flag whether the stream has terminated
+  */
+case class StageStats(name: String, elements: Long, bytes: Long,
+                      upstreamWait: FiniteDuration, downstreamWait: FiniteDuration,
+                      elementsPerSecond: Double, bytesPerSecond: Double,
+                      upstreamWaitRatio: Double, downstreamWaitRatio: Double,
+                      completed: Boolean) {
+  override def toString: String =
+    f"[$name] $elementsPerSecond%.1f elements/s, ${bytesPerSecond / 1024 / 1024}%.2f MB/s, " +
+      f"waiting on upstream ${upstreamWaitRatio * 100}%.0f%%, " +
+      f"on downstream ${downstreamWaitRatio * 100}%.0f%% (total: $elements elements, " +
+      f"$bytes bytes, upstream wait ${upstreamWait.toMillis} ms, " +
+      f"downstream wait ${downstreamWait.toMillis} ms${if (completed) ", completed" else ""})"
+}
+
+/**
+  * An in-process registry for the statistics reported by monitor stages.
+  *
+  * The registry is an Akka extension, so there is one instance per actor
+  * system. It holds the latest statistics of each monitored stage, keyed by
+  * the stage name.
+  */
+class StreamMetrics extends Extension {
+  /** The map with the statistics of the single stages. */
+  private val stats = new ConcurrentHashMap[String, StageStats]
+
+  /**
+    * Stores the statistics of a stage, replacing older ones.
+    *
+    * @param stageStats the statistics
+    */
+  def update(stageStats: StageStats): Unit = {
+    stats.put(stageStats.name, stageStats)
+  }
+
+  /**
+    * Returns the latest statistics of the stage with the given name.
+    *
+    * @param name the name of the stage
+    * @return an option with the statistics of this stage
+    */
+  def get(name: String): Option[StageStats] = Option(stats.get(name))
+
+  /**
+    * Returns the statistics of all stages.
+    *
+    * @return a map with the statistics, keyed by stage names
+    */
+  def snapshot: Map[String, StageStats] = stats.asScala.toMap
+}
+
+object StreamMetrics extends ExtensionId[StreamMetrics] with ExtensionIdProvider {
+  override def lookup(): ExtensionId[_ <: Extension] = StreamMetrics
+
+  override def createExtension(system: ExtendedActorSystem): StreamMetrics = new StreamMetrics
+
+  override def get(system: ActorSystem): StreamMetrics = super.get(system)
+}
+
+/**
+  * A stage that passes elements through unchanged and collects statistics
+  * about them.
+  *
+  * The stage can be inserted between any two stages of a stream. It counts
+  * the elements and their sizes and measures how long it waits for elements
+  * from upstream and for demand from downstream. In the given interval and
+  * when the stream terminates, it logs the statistics and stores them in the
+  * [[StreamMetrics]] registry. A stage that spends most of its time waiting
+  * on upstream sits behind the bottleneck; a stage waiting on downstream
+  * sits in front of it. Note that wait times are only meaningful if there
+  * is an asynchronous boundary nearby (e.g. a file source or sink, or a
+  * ''mapAsync'' stage); within a fused part of a stream, elements are passed
+  * on synchronously.
+  *
+  * @param name     the name of the stage used for reporting
+  * @param registry the registry for statistics
+  * @param interval the reporting interval
+  * @param size     a function to determine the size of an element in bytes
+  * @tparam T the type of the elements
+  */
+class MonitorStage[T](name: String, registry: StreamMetrics, interval: FiniteDuration,
+                      size: T => Long) extends GraphStage[FlowShape[T, T]] {
+  val in: Inlet[T] = Inlet[T]("MonitorStage.in")
+  val out: Outlet[T] = Outlet[T]("MonitorStage.out")
+
+  override val shape: FlowShape[T, T] = FlowShape(in, out)
+
+  override def createLogic(inheritedAttributes: Attributes): GraphStageLogic =
+    new TimerGraphStageLogic(shape) with InHandler with OutHandler with StageLogging {
+      private var elements = 0L
+      private var bytes = 0L
+      private var upstreamWait = 0L
+      private var downstreamWait = 0L
+
+      /** Start time of the current upstream wait or -1. */
+      private var upstreamWaitStart = -1L
+
+      /** Start time of the current downstream wait or -1. */
+      private var downstreamWaitStart = -1L
+
+      /** Values at the time of the last report. */
+      private var lastReportTime = 0L
+      private var lastElements = 0L
+      private var lastBytes = 0L
+      private var lastUpstreamWait = 0L
+      private var lastDownstreamWait = 0L
+
+      override protected def logSource: Class[_] = classOf[MonitorStage[_]]
+
+      override def preStart(): Unit = {
+        lastReportTime = System.nanoTime()
+        schedulePeriodically(None, interval)
+      }
+
+      override def onPush(): Unit = {
+        val elem = grab(in)
+        val now = System.nanoTime()
+        upstreamWait += now - upstreamWaitStart
+        upstreamWaitStart = -1
+        elements += 1
+        bytes += size(elem)
+        downstreamWaitStart = now
+        push(out, elem)
+      }
+
+      override def onPull(): Unit = {
+        val now = System.nanoTime()
+        if (downstreamWaitStart >= 0) {
+          downstreamWait += now - downstreamWaitStart
+          downstreamWaitStart = -1
+        }
+        upstreamWaitStart = now
+        pull(in)
+      }
+
+      override protected def onTimer(timerKey: Any): Unit = {
+        report(completed = false)
+      }
+
+      override def postStop(): Unit = {
+        report(completed = true)
+      }
+
+      /**
+        * Generates statistics for the time since the last report, logs them,
+        * and stores them in the registry. Waits in progress are counted up
+        * to now.
+        *
+        * @param completed flag whether the stream has terminated
+        */
+      private def report(completed: Boolean): Unit = {
+        val now = System.nanoTime()
+        if (upstreamWaitStart >= 0) {
+          upstreamWait += now - upstreamWaitStart
+          upstreamWaitStart = now
+        }
+        if (downstreamWaitStart >= 0) {
+          downstreamWait += now - downstreamWaitStart
+          downstreamWaitStart = now
+        }
+
+        val elapsed = math.max(now - lastReportTime, 1).toDouble
+        val stats = StageStats(name, elements, bytes, upstreamWait.nanos, downstreamWait.nanos,
+          (elements - lastElements) * 1e9 / elapsed, (bytes - lastBytes) * 1e9 / elapsed,
+          (upstreamWait - lastUpstreamWait) / elapsed,
+          (downstreamWait - lastDownstreamWait) / elapsed, completed)
+        registry.update(stats)
+        log.info(stats.toString)
+
+        lastReportTime = now
+        lastElements = elements
+        lastBytes = bytes
+        lastUpstreamWait = upstreamWait
+        lastDownstreamWait = downstreamWait
+      }
+
+      setHandlers(in, out, this)
+    }
+}
+
+object MonitorStage {
+  /** The default reporting interval. */
+  val DefaultInterval: FiniteDuration = 1.second
+
+  /**
+    * Returns a stage monitoring a stream of ''ByteString'' objects.
+    *
+    * @param name     the name of the stage used for reporting
+    * @param registry the registry for statistics
+    * @param interval the reporting interval
+    * @return the monitoring stage
+    */
+  def bytes(name: String, registry: StreamMetrics, interval: FiniteDuration = DefaultInterval):
+  MonitorStage[ByteString] = new MonitorStage[ByteString](name, registry, interval, _.length)
+}
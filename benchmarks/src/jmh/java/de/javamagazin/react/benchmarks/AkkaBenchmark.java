@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.FileIO;
+import akka.stream.javadsl.Sink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+/**
+ * Benchmark for reading a file with Akka's streaming API. The data is
+ * consumed by a sink which counts the bytes.
+ */
+@State(Scope.Benchmark)
+public class AkkaBenchmark {
+    /**
+     * The actor system.
+     */
+    private ActorSystem system;
+
+    /**
+     * The object to materialize streams.
+     */
+    private ActorMaterializer materializer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = ActorSystem.create("BenchmarkSystem");
+        materializer = ActorMaterializer.create(system);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Await.result(system.terminate(), Duration.create(10, TimeUnit.SECONDS));
+    }
+
+    @Benchmark
+    public long readFileIO(FileState file) throws Exception {
+        return FileIO.fromPath(file.path)
+                .runWith(Sink.fold(0L, (count, bytes) -> count + bytes.size()), materializer)
+                .toCompletableFuture()
+                .get();
+    }
+}
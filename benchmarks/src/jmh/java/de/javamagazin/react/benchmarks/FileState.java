@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * <p>
+ * A JMH state providing a generated test file of a configurable size.
+ * </p>
+ * <p>
+ * The file is created once per trial in a temporary directory and deleted
+ * afterwards. Its content is generated by {@link TestFiles}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class FileState {
+    /**
+     * The size of the test file in bytes (1 KB, 1 MB, 100 MB, 1 GB).
+     */
+    @Param({"1024", "1048576", "104857600", "1073741824"})
+    public long fileSize;
+
+    /**
+     * The path to the generated test file.
+     */
+    public Path path;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        path = Files.createTempFile("benchmark", ".txt");
+        TestFiles.generate(path, fileSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import de.javamagazin.react.plainjava.AdaptiveReadStrategy;
+import de.javamagazin.react.plainjava.AsyncFilePublisher;
+import de.javamagazin.react.plainjava.AsyncFileReader;
+import de.javamagazin.react.plainjava.BlockingReadStrategy;
+import de.javamagazin.react.plainjava.MappedFileReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * Benchmarks for the file reading strategies of the <em>plainJava</em>
+ * module.
+ * </p>
+ * <p>
+ * As a baseline, {@code Files.readAllBytes()} is measured as used by
+ * {@code BlockingFileReader}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class PlainJavaBenchmark {
+    /**
+     * The reader for asynchronous operations.
+     */
+    private final AsyncFileReader asyncReader = new AsyncFileReader();
+
+    /**
+     * The reader for memory-mapped operations.
+     */
+    private final MappedFileReader mappedReader = new MappedFileReader();
+
+    /**
+     * The strategy for blocking reads on virtual threads.
+     */
+    private final BlockingReadStrategy virtualThreadStrategy =
+            BlockingReadStrategy.onVirtualThreads();
+
+    /**
+     * The strategy selecting the read strategy based on the file size.
+     */
+    private final AdaptiveReadStrategy adaptiveStrategy = new AdaptiveReadStrategy();
+
+    @Benchmark
+    public byte[] readAllBytes(FileState file) throws IOException {
+        return Files.readAllBytes(file.path);
+    }
+
+    @Benchmark
+    public long readMapped(FileState file, Blackhole bh) throws IOException {
+        return mappedReader.readFile(file.path, window -> {
+            while (window.hasRemaining()) {
+                bh.consume(window.get());
+            }
+        });
+    }
+
+    @Benchmark
+    public String readAsync(FileState file) throws Exception {
+        return asyncReader.readFile(file.path).get();
+    }
+
+    @Benchmark
+    public long readAsyncStreamed(FileState file) throws Exception {
+        AsyncFilePublisher publisher = asyncReader.readFileStreamed(file.path);
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            private Flow.Subscription subscription;
+
+            private long count;
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                count += buffer.remaining();
+                publisher.release(buffer);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable ex) {
+                result.completeExceptionally(ex);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(count);
+            }
+        });
+        return result.get();
+    }
+
+    @Benchmark
+    public String readOnVirtualThread(FileState file) throws Exception {
+        return virtualThreadStrategy.readFile(file.path, StandardCharsets.UTF_8).get();
+    }
+
+    @Benchmark
+    public String readAdaptive(FileState file) throws Exception {
+        return adaptiveStrategy.readFile(file.path, StandardCharsets.UTF_8).get();
+    }
+}
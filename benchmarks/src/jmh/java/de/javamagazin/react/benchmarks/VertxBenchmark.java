@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.OpenOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * <p>
+ * Benchmarks for reading files with Vert.x.
+ * </p>
+ * <p>
+ * Both reading a file in a single buffer (as done by the demo verticles) and
+ * streaming it via an {@code AsyncFile} are measured.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class VertxBenchmark {
+    /**
+     * The Vertx instance.
+     */
+    private Vertx vertx;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(res -> closed.complete(null));
+        closed.join();
+    }
+
+    @Benchmark
+    public Buffer readFile(FileState file) throws Exception {
+        CompletableFuture<Buffer> result = new CompletableFuture<>();
+        vertx.fileSystem().readFile(file.path.toString(), res -> {
+            if (res.succeeded()) {
+                result.complete(res.result());
+            } else {
+                result.completeExceptionally(res.cause());
+            }
+        });
+        return result.get();
+    }
+
+    @Benchmark
+    public long readAsyncFile(FileState file) throws Exception {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        vertx.fileSystem().open(file.path.toString(), new OpenOptions().setRead(true), res -> {
+            if (res.failed()) {
+                result.completeExceptionally(res.cause());
+            } else {
+                long[] count = new long[1];
+                res.result().handler(buf -> count[0] += buf.length())
+                        .exceptionHandler(result::completeExceptionally)
+                        .endHandler(v -> {
+                            res.result().close();
+                            result.complete(count[0]);
+                        });
+            }
+        });
+        return result.get();
+    }
+}
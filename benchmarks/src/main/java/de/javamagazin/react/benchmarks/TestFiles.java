@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * <p>
+ * A class for generating test files used by the benchmarks and the load
+ * test.
+ * </p>
+ * <p>
+ * The files consist of text lines of random length; some of them are empty
+ * or comment lines, so that the files are also suitable for processing
+ * benchmarks.
+ * </p>
+ */
+public final class TestFiles {
+    private TestFiles() {
+    }
+
+    /**
+     * Writes a text file of the given size. A fixed seed is used, so that
+     * the content is reproducible.
+     *
+     * @param target the path of the file to be written
+     * @param size   the size of the file in bytes
+     * @throws IOException if an I/O error occurs
+     */
+    public static void generate(Path target, long size) throws IOException {
+        Random random = new Random(42);
+        StringBuilder line = new StringBuilder();
+        long written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.US_ASCII)) {
+            while (written < size) {
+                line.setLength(0);
+                int kind = random.nextInt(10);
+                if (kind == 0) {
+                    line.append("# comment line");
+                } else if (kind > 1) {
+                    int length = 10 + random.nextInt(100);
+                    for (int i = 0; i < length; i++) {
+                        line.append((char) ('A' + random.nextInt(58)));
+                    }
+                }
+                line.append('\n');
+                int count = (int) Math.min(line.length(), size - written);
+                writer.append(line, 0, count);
+                written += count;
+            }
+        }
+    }
+}
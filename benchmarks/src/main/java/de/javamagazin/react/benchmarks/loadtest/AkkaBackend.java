@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.IOResult;
+import akka.stream.javadsl.FileIO;
+import akka.stream.javadsl.Sink;
+import de.javamagazin.react.akka.FileProcessor;
+import de.javamagazin.react.akka.ProcessingOptions;
+import scala.collection.JavaConverters;
+import scala.compat.java8.FutureConverters;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+/**
+ * <p>
+ * A backend based on the <em>akka</em> module.
+ * </p>
+ * <p>
+ * Files are read by a stream from {@code FileIO} into a sink which counts
+ * the bytes, just as in {@code AkkaBenchmark}. Processing uses the
+ * {@link FileProcessor} with options that can be passed in the syntax of its
+ * command line.
+ * </p>
+ */
+public class AkkaBackend implements Backend {
+    /**
+     * The actor system.
+     */
+    private final ActorSystem system;
+
+    /**
+     * The object to materialize streams.
+     */
+    private final ActorMaterializer materializer;
+
+    /**
+     * The options for processing files.
+     */
+    private final ProcessingOptions options;
+
+    /**
+     * Creates a new instance of {@code AkkaBackend}.
+     *
+     * @param processingOptions options for the {@code FileProcessor}
+     */
+    public AkkaBackend(List<String> processingOptions) {
+        system = ActorSystem.create("LoadTestSystem");
+        materializer = ActorMaterializer.create(system);
+        options = ProcessingOptions.parse(
+                JavaConverters.asScalaBufferConverter(processingOptions).asScala());
+    }
+
+    @Override
+    public String getName() {
+        return "akka";
+    }
+
+    @Override
+    public CompletionStage<?> read(Path path) {
+        return FileIO.fromPath(path)
+                .runWith(Sink.fold(0L, (count, bytes) -> count + bytes.size()), materializer);
+    }
+
+    @Override
+    public CompletionStage<?> process(Path path) {
+        return FutureConverters.toJava(FileProcessor.processFile(path, Backend.outputPath(path),
+                options, system, materializer))
+                .thenApply(AkkaBackend::checkResult);
+    }
+
+    @Override
+    public void close() throws Exception {
+        Await.result(system.terminate(), Duration.create(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Checks whether an {@code IOResult} reports a failure. In this case, the
+     * stage is failed.
+     *
+     * @param result the result
+     * @return the same result
+     */
+    private static IOResult checkResult(IOResult result) {
+        if (!result.wasSuccessful()) {
+            throw new CompletionException(new IOException("Processing failed",
+                    result.getError()));
+        }
+        return result;
+    }
+}
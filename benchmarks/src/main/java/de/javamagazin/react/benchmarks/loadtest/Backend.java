@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks.loadtest;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * <p>
+ * An interface abstracting over the modules whose behavior under load is
+ * tested.
+ * </p>
+ * <p>
+ * A backend supports the two operations of the demo applications: reading a
+ * file and processing a file (i.e. filtering and transforming its lines).
+ * The output of processing is written to a file next to the input file with
+ * the suffix {@value #OUTPUT_SUFFIX}. Operations are asynchronous; if a
+ * backend rejects an operation because it is overloaded, the resulting stage
+ * fails with an {@link OverloadedException}.
+ * </p>
+ */
+public interface Backend extends AutoCloseable {
+    /**
+     * The suffix of the files written by the process operation.
+     */
+    String OUTPUT_SUFFIX = ".processed";
+
+    /**
+     * Returns the name of this backend used in reports.
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Reads the given file. The content is not decoded or otherwise
+     * interpreted; the operation only determines the number of bytes of the
+     * file, so that all backends do the same work.
+     *
+     * @param path the path of the file
+     * @return a stage that completes when the file has been read
+     */
+    CompletionStage<?> read(Path path);
+
+    /**
+     * Processes the given file.
+     *
+     * @param path the path of the file
+     * @return a stage that completes when the output has been written
+     */
+    CompletionStage<?> process(Path path);
+
+    /**
+     * Returns the path of the output file for the given input file.
+     *
+     * @param path the path of the input file
+     * @return the path of the output file
+     */
+    static Path outputPath(Path path) {
+        return path.resolveSibling(path.getFileName() + OUTPUT_SUFFIX);
+    }
+}
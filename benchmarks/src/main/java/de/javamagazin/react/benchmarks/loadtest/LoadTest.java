@@ -0,0 +1,556 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks.loadtest;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * <p>
+ * A load test comparing the backends of the demo modules end-to-end.
+ * </p>
+ * <p>
+ * While the JMH benchmarks measure single operations in isolation, this
+ * class simulates a number of concurrent clients. Each client executes
+ * operations in a closed loop: it issues a request for reading or processing
+ * a file, waits for the response, and immediately issues the next one. If a
+ * backend rejects a request because it is overloaded, the client retries it
+ * after the delay proposed by the backend; the latency of such a request is
+ * measured from its first attempt.
+ * </p>
+ * <p>
+ * The work of the clients (preparing requests and handling responses) is
+ * done by a thread pool with one thread per client, so that the harness does
+ * not limit the throughput of a backend at high concurrency levels. A
+ * separate scheduler is only used to delay retries and to sample the heap.
+ * </p>
+ * <p>
+ * Each backend is tested with a sweep of concurrency levels. For each level,
+ * there is a warmup phase followed by a measurement phase. The results -
+ * throughput, latency percentiles, CPU usage, heap usage, and garbage
+ * collection activity - are written to a CSV file. All backends run in this
+ * JVM one after the other, so CPU and heap figures refer to the process as a
+ * whole.
+ * </p>
+ */
+public class LoadTest {
+    /**
+     * The header line of the CSV file.
+     */
+    private static final String CSV_HEADER = "backend,concurrency,processRatio,durationSec," +
+            "operations,failures,rejected,opsPerSec,mbPerSec,p50Ms,p90Ms,p99Ms,p999Ms," +
+            "maxMs,cpuPercent,heapAvgMb,heapMaxMb,gcCount,gcTimeMs";
+
+    /**
+     * The interval in milliseconds in which heap usage is sampled.
+     */
+    private static final long HEAP_SAMPLE_INTERVAL = 100;
+
+    /**
+     * The time in minutes to wait for outstanding operations at the end of
+     * a run.
+     */
+    private static final long DRAIN_TIMEOUT = 10;
+
+    /**
+     * Constant for one megabyte.
+     */
+    private static final double MB = 1024 * 1024;
+
+    /**
+     * The configuration of the test.
+     */
+    private final LoadTestConfig config;
+
+    /**
+     * The workload.
+     */
+    private final Workload workload;
+
+    /**
+     * The stream for progress messages.
+     */
+    private final PrintStream console;
+
+    /**
+     * Creates a new instance of {@code LoadTest}.
+     *
+     * @param config   the configuration
+     * @param workload the workload
+     * @param console  the stream for progress messages
+     */
+    public LoadTest(LoadTestConfig config, Workload workload, PrintStream console) {
+        this.config = config;
+        this.workload = workload;
+        this.console = console;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse(args);
+        PrintStream console = System.out;
+        int maxClients = Collections.max(config.getConcurrencyLevels());
+
+        console.println("Generating test files...");
+        try (Workload workload = new Workload(config, maxClients);
+             PrintWriter csv = new PrintWriter(Files.newBufferedWriter(config.getOutput()))) {
+            LoadTest loadTest = new LoadTest(config, workload, console);
+            csv.println(CSV_HEADER);
+            for (String name : config.getBackends()) {
+                loadTest.testBackend(name, csv);
+            }
+        }
+        console.println("Results written to " + config.getOutput());
+    }
+
+    /**
+     * Tests a backend with all concurrency levels and writes the results.
+     *
+     * @param name the name of the backend
+     * @param csv  the writer for the results
+     * @throws Exception if an error occurs
+     */
+    private void testBackend(String name, PrintWriter csv) throws Exception {
+        System.gc();
+        try (Backend backend = createBackend(name)) {
+            for (int concurrency : config.getConcurrencyLevels()) {
+                console.printf("Testing %s with %d clients...%n", name, concurrency);
+                Result result = run(backend, concurrency);
+                console.println(result.toSummary());
+                csv.println(result.toCsv());
+                csv.flush();
+            }
+        }
+    }
+
+    /**
+     * Runs a test of a backend with the given number of clients.
+     *
+     * @param backend     the backend
+     * @param concurrency the number of clients
+     * @return the result of the test
+     * @throws InterruptedException if the test is interrupted
+     */
+    private Result run(Backend backend, int concurrency) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Run run = new Run(backend, clients, scheduler, concurrency);
+            run.start();
+            TimeUnit.SECONDS.sleep(config.getWarmupSeconds());
+
+            ResourceSnapshot startResources = ResourceSnapshot.take();
+            Run.Counts startCounts = run.counts();
+            run.recorder.getIntervalHistogram();
+            HeapSampler heap = new HeapSampler();
+            ScheduledFuture<?> sampling = scheduler.scheduleAtFixedRate(heap, 0,
+                    HEAP_SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+            TimeUnit.SECONDS.sleep(config.getDurationSeconds());
+
+            Histogram latencies = run.recorder.getIntervalHistogram();
+            Run.Counts endCounts = run.counts();
+            ResourceSnapshot endResources = ResourceSnapshot.take();
+            sampling.cancel(false);
+            run.stop();
+
+            return new Result(backend.getName(), concurrency, config.getProcessRatio(),
+                    endCounts.minus(startCounts), latencies,
+                    endResources.minus(startResources), heap);
+        } finally {
+            scheduler.shutdownNow();
+            clients.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the backend with the given name.
+     *
+     * @param name the name of the backend
+     * @return the backend
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    private Backend createBackend(String name) {
+        switch (name) {
+            case "plainJava":
+                return new PlainJavaBackend();
+            case "vertx":
+                return new VertxBackend(config.getVertxInstances(), config.getVertxCacheSize());
+            case "akka":
+                return new AkkaBackend(config.getAkkaOptions());
+            default:
+                throw new IllegalArgumentException("Unknown backend: " + name);
+        }
+    }
+
+    /**
+     * Unwraps the exception a stage failed with.
+     *
+     * @param error the exception
+     * @return the original cause
+     */
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ?
+                error.getCause() : error;
+    }
+
+    /**
+     * A class representing a single test run of a backend with a specific
+     * number of clients.
+     */
+    private final class Run {
+        /**
+         * The recorder for latencies in microseconds.
+         */
+        final Recorder recorder = new Recorder(3);
+
+        /**
+         * The number of successful operations.
+         */
+        final AtomicLong operations = new AtomicLong();
+
+        /**
+         * The number of bytes read or processed by successful operations.
+         */
+        final AtomicLong bytes = new AtomicLong();
+
+        /**
+         * The number of failed operations.
+         */
+        final AtomicLong failures = new AtomicLong();
+
+        /**
+         * The number of rejected attempts.
+         */
+        final AtomicLong rejected = new AtomicLong();
+
+        /**
+         * The backend.
+         */
+        private final Backend backend;
+
+        /**
+         * The executor for the work of the clients.
+         */
+        private final ExecutorService clients;
+
+        /**
+         * The executor for delaying retries.
+         */
+        private final ScheduledExecutorService scheduler;
+
+        /**
+         * The number of clients.
+         */
+        private final int concurrency;
+
+        /**
+         * A latch for waiting until all clients have stopped.
+         */
+        private final CountDownLatch stopped;
+
+        /**
+         * Flag whether clients should continue issuing requests.
+         */
+        private volatile boolean running;
+
+        Run(Backend backend, ExecutorService clients, ScheduledExecutorService scheduler,
+            int concurrency) {
+            this.backend = backend;
+            this.clients = clients;
+            this.scheduler = scheduler;
+            this.concurrency = concurrency;
+            stopped = new CountDownLatch(concurrency);
+        }
+
+        /**
+         * Starts the clients.
+         */
+        void start() {
+            running = true;
+            for (int client = 0; client < concurrency; client++) {
+                Random random = new Random(client);
+                int index = client;
+                clients.execute(() -> next(index, random));
+            }
+        }
+
+        /**
+         * Stops the clients and waits until their outstanding operations
+         * are complete.
+         *
+         * @throws InterruptedException if waiting is interrupted
+         */
+        void stop() throws InterruptedException {
+            running = false;
+            stopped.await(DRAIN_TIMEOUT, TimeUnit.MINUTES);
+        }
+
+        /**
+         * Returns the current values of the counters.
+         *
+         * @return the counters
+         */
+        Counts counts() {
+            return new Counts(operations.get(), bytes.get(), failures.get(), rejected.get());
+        }
+
+        /**
+         * Lets a client issue its next operation.
+         *
+         * @param client the index of the client
+         * @param random the source of randomness of this client
+         */
+        private void next(int client, Random random) {
+            if (running) {
+                Workload.Operation operation = workload.next(client, random);
+                try {
+                    operation.prepare();
+                } catch (RuntimeException e) {
+                    handleError(client, random, operation, System.nanoTime(), e);
+                    return;
+                }
+                execute(client, random, operation, System.nanoTime());
+            } else {
+                stopped.countDown();
+            }
+        }
+
+        /**
+         * Executes an operation and handles its result.
+         *
+         * @param client    the index of the client
+         * @param random    the source of randomness of this client
+         * @param operation the operation
+         * @param startTime the time of the first attempt
+         */
+        private void execute(int client, Random random, Workload.Operation operation,
+                             long startTime) {
+            try {
+                operation.execute(backend).whenCompleteAsync((result, error) -> {
+                    if (error == null) {
+                        recorder.recordValue(
+                                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+                        operations.incrementAndGet();
+                        bytes.addAndGet(operation.getSize());
+                        next(client, random);
+                    } else {
+                        handleError(client, random, operation, startTime, unwrap(error));
+                    }
+                }, clients);
+            } catch (RuntimeException e) {
+                handleError(client, random, operation, startTime, e);
+            }
+        }
+
+        /**
+         * Handles a failed operation. Rejected operations are retried after
+         * the delay proposed by the backend unless the test is stopping.
+         *
+         * @param client    the index of the client
+         * @param random    the source of randomness of this client
+         * @param operation the operation
+         * @param startTime the time of the first attempt
+         * @param error     the exception
+         */
+        private void handleError(int client, Random random, Workload.Operation operation,
+                                 long startTime, Throwable error) {
+            if (error instanceof OverloadedException) {
+                rejected.incrementAndGet();
+                if (running) {
+                    long delay = Math.max(1, ((OverloadedException) error).getRetryAfter());
+                    scheduler.schedule(() -> clients.execute(
+                            () -> execute(client, random, operation, startTime)),
+                            delay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            } else {
+                failures.incrementAndGet();
+            }
+            clients.execute(() -> next(client, random));
+        }
+
+        /**
+         * A class storing the values of the counters at a specific time.
+         */
+        final class Counts {
+            final long operations;
+            final long bytes;
+            final long failures;
+            final long rejected;
+
+            Counts(long operations, long bytes, long failures, long rejected) {
+                this.operations = operations;
+                this.bytes = bytes;
+                this.failures = failures;
+                this.rejected = rejected;
+            }
+
+            Counts minus(Counts other) {
+                return new Counts(operations - other.operations, bytes - other.bytes,
+                        failures - other.failures, rejected - other.rejected);
+            }
+        }
+    }
+
+    /**
+     * A class storing the resources consumed by the process up to a specific
+     * time.
+     */
+    private static final class ResourceSnapshot {
+        final long wallTime;
+        final long cpuTime;
+        final long gcCount;
+        final long gcTime;
+
+        ResourceSnapshot(long wallTime, long cpuTime, long gcCount, long gcTime) {
+            this.wallTime = wallTime;
+            this.cpuTime = cpuTime;
+            this.gcCount = gcCount;
+            this.gcTime = gcTime;
+        }
+
+        /**
+         * Takes a snapshot of the current resource consumption.
+         *
+         * @return the snapshot
+         */
+        static ResourceSnapshot take() {
+            long gcCount = 0;
+            long gcTime = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcTime += Math.max(0, gc.getCollectionTime());
+            }
+            com.sun.management.OperatingSystemMXBean os =
+                    (com.sun.management.OperatingSystemMXBean)
+                            ManagementFactory.getOperatingSystemMXBean();
+            return new ResourceSnapshot(System.nanoTime(), os.getProcessCpuTime(),
+                    gcCount, gcTime);
+        }
+
+        ResourceSnapshot minus(ResourceSnapshot other) {
+            return new ResourceSnapshot(wallTime - other.wallTime, cpuTime - other.cpuTime,
+                    gcCount - other.gcCount, gcTime - other.gcTime);
+        }
+    }
+
+    /**
+     * A task periodically sampling the heap usage. The task is executed
+     * with a fixed rate, so executions never overlap.
+     */
+    private static final class HeapSampler implements Runnable {
+        private volatile long samples;
+        private volatile long sum;
+        private volatile long max;
+
+        @Override
+        public void run() {
+            long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            sum += used;
+            max = Math.max(max, used);
+            samples++;
+        }
+
+        double averageMb() {
+            return samples > 0 ? sum / (samples * MB) : 0;
+        }
+
+        double maxMb() {
+            return max / MB;
+        }
+    }
+
+    /**
+     * A class representing the result of a test run.
+     */
+    private static final class Result {
+        private final String backend;
+        private final int concurrency;
+        private final double processRatio;
+        private final Run.Counts counts;
+        private final Histogram latencies;
+        private final ResourceSnapshot resources;
+        private final HeapSampler heap;
+
+        private Result(String backend, int concurrency, double processRatio, Run.Counts counts,
+                       Histogram latencies, ResourceSnapshot resources, HeapSampler heap) {
+            this.backend = backend;
+            this.concurrency = concurrency;
+            this.processRatio = processRatio;
+            this.counts = counts;
+            this.latencies = latencies;
+            this.resources = resources;
+            this.heap = heap;
+        }
+
+        /**
+         * Returns a line for the CSV file with the data of this result.
+         *
+         * @return the CSV line
+         */
+        String toCsv() {
+            double seconds = resources.wallTime / 1e9;
+            double cpu = 100.0 * resources.cpuTime /
+                    (resources.wallTime * (double) Runtime.getRuntime().availableProcessors());
+            return String.format(Locale.ROOT,
+                    "%s,%d,%.2f,%.1f,%d,%d,%d,%.1f,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f,%.1f,%.1f,%.1f,%d,%d",
+                    backend, concurrency, processRatio, seconds, counts.operations,
+                    counts.failures, counts.rejected, counts.operations / seconds,
+                    counts.bytes / MB / seconds, percentile(50), percentile(90),
+                    percentile(99), percentile(99.9), latencies.getMaxValue() / 1000.0, cpu,
+                    heap.averageMb(), heap.maxMb(), resources.gcCount, resources.gcTime);
+        }
+
+        /**
+         * Returns a short summary of this result for the console.
+         *
+         * @return the summary
+         */
+        String toSummary() {
+            double seconds = resources.wallTime / 1e9;
+            return String.format(Locale.ROOT,
+                    "  %d ops (%.1f ops/s), %d failures, %d rejected, p50 %.3f ms, p99 %.3f ms",
+                    counts.operations, counts.operations / seconds, counts.failures,
+                    counts.rejected, percentile(50), percentile(99));
+        }
+
+        /**
+         * Returns a latency percentile in milliseconds.
+         *
+         * @param percentile the percentile
+         * @return the latency in milliseconds
+         */
+        private double percentile(double percentile) {
+            return latencies.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * A class holding the configuration of a load test.
+ * </p>
+ * <p>
+ * Instances are created from command line options of the form
+ * {@code --name=value}. All options are optional:
+ * </p>
+ * <ul>
+ * <li>{@code --backends}: comma-separated names of the backends to test
+ * ({@code plainJava}, {@code vertx}, {@code akka})</li>
+ * <li>{@code --concurrency}: comma-separated numbers of concurrent clients;
+ * each backend is tested with each of these levels</li>
+ * <li>{@code --sizes}: comma-separated file sizes in bytes with weights,
+ * e.g. {@code 1024:60,1048576:40}; a client picks a file size according to
+ * the weights</li>
+ * <li>{@code --process-ratio}: the fraction of operations that process a
+ * file; the others only read it</li>
+ * <li>{@code --warmup} and {@code --duration}: the warmup and measurement
+ * time in seconds per concurrency level</li>
+ * <li>{@code --output}: the CSV file for the results</li>
+ * <li>{@code --dir}: the directory for the test files; a temporary directory
+ * is used if undefined</li>
+ * <li>{@code --akka-options}: space-separated options for the Akka
+ * {@code FileProcessor}, e.g. {@code "--parallelism=4"}</li>
+ * <li>{@code --vertx-instances}: the number of instances of each verticle</li>
+ * <li>{@code --vertx-cache-size}: the size in bytes of the file cache of the
+ * Vert.x verticles; the default is 0, which disables the cache, so that all
+ * backends read the files on each request</li>
+ * </ul>
+ */
+public final class LoadTestConfig {
+    /**
+     * The prefix of all options.
+     */
+    private static final String PREFIX = "--";
+
+    /**
+     * The backends to test.
+     */
+    private final List<String> backends;
+
+    /**
+     * The concurrency levels.
+     */
+    private final List<Integer> concurrencyLevels;
+
+    /**
+     * The file sizes with their weights.
+     */
+    private final Map<Long, Integer> fileSizes;
+
+    /**
+     * The fraction of process operations.
+     */
+    private final double processRatio;
+
+    /**
+     * The warmup time in seconds.
+     */
+    private final int warmupSeconds;
+
+    /**
+     * The measurement time in seconds.
+     */
+    private final int durationSeconds;
+
+    /**
+     * The file for the results.
+     */
+    private final Path output;
+
+    /**
+     * The directory for test files; may be null.
+     */
+    private final Path directory;
+
+    /**
+     * The options for the Akka backend.
+     */
+    private final List<String> akkaOptions;
+
+    /**
+     * The number of verticle instances for the Vert.x backend.
+     */
+    private final int vertxInstances;
+
+    /**
+     * The size of the file cache for the Vert.x backend.
+     */
+    private final long vertxCacheSize;
+
+    private LoadTestConfig(Map<String, String> options) {
+        backends = Collections.unmodifiableList(
+                Arrays.asList(options.getOrDefault("backends", "plainJava,vertx,akka")
+                        .split(",")));
+        concurrencyLevels = Collections.unmodifiableList(
+                Arrays.stream(options.getOrDefault("concurrency", "1,2,4,8,16,32").split(","))
+                        .map(Integer::valueOf)
+                        .collect(Collectors.toList()));
+        fileSizes = Collections.unmodifiableMap(parseSizes(
+                options.getOrDefault("sizes", "1024:60,1048576:35,52428800:5")));
+        processRatio = Double.parseDouble(options.getOrDefault("process-ratio", "0.5"));
+        warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        durationSeconds = Integer.parseInt(options.getOrDefault("duration", "20"));
+        output = Paths.get(options.getOrDefault("output", "loadtest.csv"));
+        directory = options.containsKey("dir") ? Paths.get(options.get("dir")) : null;
+        akkaOptions = Collections.unmodifiableList(
+                Arrays.stream(options.getOrDefault("akka-options", "").split("\\s+"))
+                        .filter(s -> !s.isEmpty())
+                        .collect(Collectors.toList()));
+        vertxInstances = Integer.parseInt(options.getOrDefault("vertx-instances",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        vertxCacheSize = Long.parseLong(options.getOrDefault("vertx-cache-size", "0"));
+
+        if (processRatio < 0 || processRatio > 1) {
+            throw new IllegalArgumentException("Invalid process ratio: " + processRatio);
+        }
+    }
+
+    /**
+     * Creates a configuration from the given command line arguments.
+     *
+     * @param args the command line arguments
+     * @return the configuration
+     * @throws IllegalArgumentException if an option is invalid
+     */
+    public static LoadTestConfig parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int pos = arg.indexOf('=');
+            if (!arg.startsWith(PREFIX) || pos < 0) {
+                throw new IllegalArgumentException("Invalid option: " + arg);
+            }
+            options.put(arg.substring(PREFIX.length(), pos), arg.substring(pos + 1));
+        }
+        List<String> unknown = new ArrayList<>(options.keySet());
+        unknown.removeAll(Arrays.asList("backends", "concurrency", "sizes", "process-ratio",
+                "warmup", "duration", "output", "dir", "akka-options", "vertx-instances",
+                "vertx-cache-size"));
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + unknown);
+        }
+        return new LoadTestConfig(options);
+    }
+
+    public List<String> getBackends() {
+        return backends;
+    }
+
+    public List<Integer> getConcurrencyLevels() {
+        return concurrencyLevels;
+    }
+
+    public Map<Long, Integer> getFileSizes() {
+        return fileSizes;
+    }
+
+    public double getProcessRatio() {
+        return processRatio;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public Path getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the directory for test files. Result is <strong>null</strong>
+     * if a temporary directory is to be used.
+     *
+     * @return the directory for test files
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public List<String> getAkkaOptions() {
+        return akkaOptions;
+    }
+
+    public int getVertxInstances() {
+        return vertxInstances;
+    }
+
+    public long getVertxCacheSize() {
+        return vertxCacheSize;
+    }
+
+    /**
+     * Parses the specification of file sizes.
+     *
+     * @param spec the specification
+     * @return a map with file sizes and their weights
+     */
+    private static Map<Long, Integer> parseSizes(String spec) {
+        Map<Long, Integer> sizes = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.split(":");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            if (parts.length > 2 || weight <= 0) {
+                throw new IllegalArgumentException("Invalid file size: " + entry);
+            }
+            sizes.put(Long.valueOf(parts[0]), weight);
+        }
+        return sizes;
+    }
+}
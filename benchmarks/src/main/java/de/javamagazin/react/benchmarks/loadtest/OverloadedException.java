@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks.loadtest;
+
+/**
+ * An exception reporting that a backend rejected an operation because it is
+ * overloaded. It contains a hint when the operation should be retried.
+ */
+public class OverloadedException extends RuntimeException {
+    /**
+     * The time in milliseconds after which the operation should be retried.
+     */
+    private final long retryAfter;
+
+    /**
+     * Creates a new instance of {@code OverloadedException}.
+     *
+     * @param retryAfter the retry hint in milliseconds
+     */
+    public OverloadedException(long retryAfter) {
+        super("Backend overloaded, retry after " + retryAfter + " ms.");
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Returns the time in milliseconds after which the operation should be
+     * retried.
+     *
+     * @return the retry hint
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
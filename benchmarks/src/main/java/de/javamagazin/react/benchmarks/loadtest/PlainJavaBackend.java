@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks.loadtest;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+
+import de.javamagazin.react.plainjava.AsyncFilePublisher;
+import de.javamagazin.react.plainjava.AsyncFileReader;
+import de.javamagazin.react.plainjava.AsyncLineProcessor;
+
+/**
+ * A backend based on the <em>plainJava</em> module. Files are read by an
+ * {@link AsyncFileReader} and processed by an {@link AsyncLineProcessor}.
+ * All channels share a thread pool sized by the number of processors. Like
+ * the other backends, reading only counts the bytes of a file; so the
+ * streamed variant of the reader is used, which does not decode the data.
+ */
+public class PlainJavaBackend implements Backend {
+    /**
+     * The executor for the completion handlers of the channels.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The reader for files.
+     */
+    private final AsyncFileReader reader;
+
+    /**
+     * The processor for files.
+     */
+    private final AsyncLineProcessor processor;
+
+    /**
+     * Creates a new instance of {@code PlainJavaBackend}.
+     */
+    public PlainJavaBackend() {
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        reader = new AsyncFileReader(AsyncFileReader.DEFAULT_CHUNK_SIZE,
+                AsyncFileReader.DEFAULT_READ_AHEAD, executor);
+        processor = new AsyncLineProcessor(AsyncLineProcessor.DEFAULT_CHUNK_SIZE,
+                AsyncLineProcessor.DEFAULT_WRITE_BUFFER_SIZE,
+                AsyncLineProcessor.DEFAULT_MAX_LINE_LENGTH, executor);
+    }
+
+    @Override
+    public String getName() {
+        return "plainJava";
+    }
+
+    @Override
+    public CompletionStage<?> read(Path path) {
+        AsyncFilePublisher publisher = reader.readFileStreamed(path);
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            private Flow.Subscription subscription;
+
+            private long count;
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                count += buffer.remaining();
+                publisher.release(buffer);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable ex) {
+                result.completeExceptionally(ex);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(count);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletionStage<?> process(Path path) {
+        return processor.processFile(path, Backend.outputPath(path));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import de.javamagazin.react.vertx.FileCache;
+import de.javamagazin.react.vertx.ProcessFileVerticleFuture;
+import de.javamagazin.react.vertx.ProcessingResult;
+import de.javamagazin.react.vertx.ReadFileVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Verticle;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * <p>
+ * A backend based on the <em>vertx</em> module.
+ * </p>
+ * <p>
+ * An embedded {@code Vertx} instance is created on which the
+ * {@link ReadFileVerticle} and the {@link ProcessFileVerticleFuture} are
+ * deployed with the given number of instances and the given size of the
+ * shared {@link FileCache}. Operations are sent as messages on the event
+ * bus, just as a client of the demo application would do; so the admission
+ * control of the verticles is active, and overloaded responses are reported
+ * as {@link OverloadedException}s.
+ * </p>
+ * <p>
+ * The {@code ReadFileVerticle} loads a file into a buffer and reports its
+ * length, but does not decode it; so reads are comparable to the other
+ * backends, which count the bytes of a file. Note that with an enabled cache most reads of small files are served from
+ * memory, while the other backends read the file on each request. For a fair
+ * comparison, the cache size should therefore be 0.
+ * </p>
+ */
+public class VertxBackend implements Backend {
+    /**
+     * The timeout for requests on the event bus. This is large, so that
+     * slow responses show up in the latencies rather than as failures.
+     */
+    private static final long SEND_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * The Vertx instance.
+     */
+    private final Vertx vertx;
+
+    /**
+     * The options for sending requests.
+     */
+    private final DeliveryOptions deliveryOptions;
+
+    /**
+     * Creates a new instance of {@code VertxBackend} and deploys the
+     * verticles. This constructor blocks until the deployment is complete.
+     *
+     * @param instances the number of instances per verticle
+     * @param cacheSize the size of the file cache in bytes (0 to disable it)
+     */
+    public VertxBackend(int instances, long cacheSize) {
+        vertx = Vertx.vertx();
+        deliveryOptions = new DeliveryOptions().setSendTimeout(SEND_TIMEOUT);
+        DeploymentOptions options = new DeploymentOptions().setInstances(instances)
+                .setConfig(new JsonObject().put(FileCache.CONFIG_CACHE_SIZE, cacheSize));
+        CompletableFuture.allOf(deploy(ReadFileVerticle.class, options),
+                deploy(ProcessFileVerticleFuture.class, options)).join();
+    }
+
+    @Override
+    public String getName() {
+        return "vertx";
+    }
+
+    @Override
+    public CompletionStage<?> read(Path path) {
+        return send(ReadFileVerticle.ADDR_READ_FILE, path);
+    }
+
+    @Override
+    public CompletionStage<?> process(Path path) {
+        return send(ProcessFileVerticleFuture.ADDR_PROCESS_FILE, path);
+    }
+
+    @Override
+    public void close() {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(res -> closed.complete(null));
+        closed.join();
+    }
+
+    /**
+     * Deploys a verticle.
+     *
+     * @param verticleClass the class of the verticle
+     * @param options       the deployment options
+     * @return a future for the result of the deployment
+     */
+    private CompletableFuture<String> deploy(Class<? extends Verticle> verticleClass,
+                                             DeploymentOptions options) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        vertx.deployVerticle(verticleClass.getName(), options, res -> {
+            if (res.succeeded()) {
+                future.complete(res.result());
+            } else {
+                future.completeExceptionally(res.cause());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Sends a request for a file to the given address and converts the
+     * response.
+     *
+     * @param address the address
+     * @param path    the path of the file
+     * @return a stage with the result of the request
+     */
+    private CompletionStage<ProcessingResult> send(String address, Path path) {
+        CompletableFuture<ProcessingResult> future = new CompletableFuture<>();
+        vertx.eventBus().<ProcessingResult>send(address, path.toString(), deliveryOptions,
+                reply -> {
+                    if (reply.failed()) {
+                        future.completeExceptionally(reply.cause());
+                    } else {
+                        ProcessingResult result = reply.result().body();
+                        if (result.isOverloaded()) {
+                            future.completeExceptionally(
+                                    new OverloadedException(result.getRetryAfter()));
+                        } else if (!result.isSuccess()) {
+                            future.completeExceptionally(new IOException(result.getMessage()));
+                        } else {
+                            future.complete(result);
+                        }
+                    }
+                });
+        return future;
+    }
+}
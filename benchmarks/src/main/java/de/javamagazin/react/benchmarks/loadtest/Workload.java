@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.benchmarks.loadtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletionStage;
+
+import de.javamagazin.react.benchmarks.TestFiles;
+
+/**
+ * <p>
+ * A class managing the test files of a load test and deciding which
+ * operation a client executes next.
+ * </p>
+ * <p>
+ * For each configured size, one file is generated. As concurrent process
+ * operations on the same file would write to the same output file, each
+ * client gets its own links to the generated files (or copies if the file
+ * system does not support hard links). The operations of a client are
+ * selected randomly according to the weights of the file sizes and the
+ * process ratio.
+ * </p>
+ */
+public final class Workload implements AutoCloseable {
+    /**
+     * The directory containing the test files.
+     */
+    private final Path directory;
+
+    /**
+     * Flag whether the directory was created by this object.
+     */
+    private final boolean temporary;
+
+    /**
+     * The file sizes.
+     */
+    private final long[] sizes;
+
+    /**
+     * The cumulated weights of the file sizes.
+     */
+    private final int[] cumulatedWeights;
+
+    /**
+     * The fraction of process operations.
+     */
+    private final double processRatio;
+
+    /**
+     * The files for the clients, indexed by client and size.
+     */
+    private final Path[][] files;
+
+    /**
+     * Stores all paths created by this object, so they can be removed.
+     */
+    private final List<Path> createdFiles = new ArrayList<>();
+
+    /**
+     * Creates a new instance of {@code Workload} and generates the test
+     * files.
+     *
+     * @param config     the configuration of the load test
+     * @param maxClients the maximum number of concurrent clients
+     * @throws IOException if the test files cannot be created
+     */
+    public Workload(LoadTestConfig config, int maxClients) throws IOException {
+        temporary = config.getDirectory() == null;
+        directory = temporary ? Files.createTempDirectory("loadtest") :
+                Files.createDirectories(config.getDirectory());
+        processRatio = config.getProcessRatio();
+
+        Map<Long, Integer> fileSizes = config.getFileSizes();
+        sizes = new long[fileSizes.size()];
+        cumulatedWeights = new int[fileSizes.size()];
+        int index = 0;
+        int weight = 0;
+        for (Map.Entry<Long, Integer> e : fileSizes.entrySet()) {
+            sizes[index] = e.getKey();
+            weight += e.getValue();
+            cumulatedWeights[index++] = weight;
+        }
+
+        files = new Path[maxClients][sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            Path source = directory.resolve("test_" + sizes[i] + ".txt");
+            TestFiles.generate(source, sizes[i]);
+            createdFiles.add(source);
+            for (int client = 0; client < maxClients; client++) {
+                files[client][i] = createClientFile(source, client);
+            }
+        }
+    }
+
+    /**
+     * Selects the next operation of a client.
+     *
+     * @param client the index of the client
+     * @param random the source of randomness of this client
+     * @return the next operation
+     */
+    public Operation next(int client, Random random) {
+        int value = random.nextInt(cumulatedWeights[cumulatedWeights.length - 1]);
+        int index = 0;
+        while (value >= cumulatedWeights[index]) {
+            index++;
+        }
+        return new Operation(files[client][index], sizes[index],
+                random.nextDouble() < processRatio);
+    }
+
+    /**
+     * Removes all files created by this object, including the output of
+     * process operations.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path file : createdFiles) {
+            Files.deleteIfExists(Backend.outputPath(file));
+            Files.deleteIfExists(file);
+        }
+        if (temporary) {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Creates the file for a specific client. This is a hard link to the
+     * source file or a copy if links are not supported.
+     *
+     * @param source the source file
+     * @param client the index of the client
+     * @return the path of the file for this client
+     * @throws IOException if an I/O error occurs
+     */
+    private Path createClientFile(Path source, int client) throws IOException {
+        Path target = source.resolveSibling(client + "_" + source.getFileName());
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target);
+        }
+        createdFiles.add(target);
+        return target;
+    }
+
+    /**
+     * A class representing an operation to be executed by a client.
+     */
+    public static final class Operation {
+        /**
+         * The file to be read or processed.
+         */
+        private final Path path;
+
+        /**
+         * The size of the file.
+         */
+        private final long size;
+
+        /**
+         * Flag whether the file is to be processed.
+         */
+        private final boolean process;
+
+        private Operation(Path path, long size, boolean process) {
+            this.path = path;
+            this.size = size;
+            this.process = process;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isProcess() {
+            return process;
+        }
+
+        /**
+         * Prepares the execution of this operation. Before a file is
+         * processed, the output of a previous operation is removed; some
+         * backends refuse to overwrite existing files. This method is called
+         * before the time measurement of the operation starts.
+         *
+         * @throws UncheckedIOException if the output cannot be removed
+         */
+        public void prepare() {
+            if (process) {
+                try {
+                    Files.deleteIfExists(Backend.outputPath(path));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        /**
+         * Executes this operation on the given backend. {@link #prepare()}
+         * must have been called before.
+         *
+         * @param backend the backend
+         * @return the stage with the result of the operation
+         */
+        public CompletionStage<?> execute(Backend backend) {
+            return process ? backend.process(path) : backend.read(path);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A {@link FileReadStrategy} implementation that selects the strategy to
+ * read a file based on its size and the current concurrency.
+ * </p>
+ * <p>
+ * The selection works as follows:
+ * </p>
+ * <ul>
+ * <li>Files up to the <em>small file threshold</em> are read blocking on a
+ * virtual thread, so that the caller is not blocked. Optionally, a
+ * <em>direct concurrency</em> can be set: if the number of read operations
+ * in progress does not exceed it, small files are read directly in the
+ * calling thread. This avoids the hand-over to another thread, but then
+ * {@link #readFile(Path, Charset)} blocks its caller; therefore, the
+ * default direct concurrency is 0, which disables direct reads.</li>
+ * <li>Files of at least the <em>large file threshold</em> are read using
+ * memory-mapped I/O (on a virtual thread). The content has to fit into a
+ * single string; see {@link MappedReadStrategy}.</li>
+ * <li>All other files are read via asynchronous NIO.</li>
+ * </ul>
+ */
+public class AdaptiveReadStrategy implements FileReadStrategy {
+    /**
+     * The default threshold for small files.
+     */
+    public static final long DEFAULT_SMALL_FILE_THRESHOLD = 64 * 1024;
+
+    /**
+     * The default threshold for large files.
+     */
+    public static final long DEFAULT_LARGE_FILE_THRESHOLD = 256 * 1024 * 1024;
+
+    /**
+     * The default number of read operations for which small files are read
+     * in the calling thread. A value of 0 means that small files are always
+     * read on virtual threads.
+     */
+    public static final int DEFAULT_DIRECT_CONCURRENCY = 0;
+
+    /**
+     * The strategy for small files if the concurrency is low.
+     */
+    private final FileReadStrategy directStrategy;
+
+    /**
+     * The strategy for small files if the concurrency is high.
+     */
+    private final FileReadStrategy virtualThreadStrategy;
+
+    /**
+     * The strategy for medium-sized files.
+     */
+    private final FileReadStrategy asyncStrategy;
+
+    /**
+     * The strategy for large files.
+     */
+    private final FileReadStrategy mappedStrategy;
+
+    /**
+     * The threshold for small files.
+     */
+    private final long smallFileThreshold;
+
+    /**
+     * The threshold for large files.
+     */
+    private final long largeFileThreshold;
+
+    /**
+     * The maximum concurrency for reads in the calling thread.
+     */
+    private final int directConcurrency;
+
+    /**
+     * The number of read operations currently in progress.
+     */
+    private final AtomicInteger inProgress = new AtomicInteger();
+
+    /**
+     * Creates a new instance of {@code AdaptiveReadStrategy} with default
+     * thresholds.
+     */
+    public AdaptiveReadStrategy() {
+        this(DEFAULT_SMALL_FILE_THRESHOLD, DEFAULT_LARGE_FILE_THRESHOLD,
+                DEFAULT_DIRECT_CONCURRENCY);
+    }
+
+    /**
+     * Creates a new instance of {@code AdaptiveReadStrategy} with the given
+     * thresholds.
+     *
+     * @param smallFileThreshold the maximum size of files read blocking
+     * @param largeFileThreshold the minimum size of files read via mmap
+     * @param directConcurrency  the maximum number of read operations in
+     *                           progress for which small files are read in
+     *                           the calling thread (0 to disable
+     *                           direct reads)
+     * @throws IllegalArgumentException if the thresholds are inconsistent or
+     *                                  the direct concurrency is negative
+     */
+    public AdaptiveReadStrategy(long smallFileThreshold, long largeFileThreshold,
+                                int directConcurrency) {
+        if (smallFileThreshold > largeFileThreshold) {
+            throw new IllegalArgumentException(
+                    "Small file threshold must not exceed large file threshold.");
+        }
+        if (directConcurrency < 0) {
+            throw new IllegalArgumentException(
+                    "Direct concurrency must not be negative: " + directConcurrency);
+        }
+        this.smallFileThreshold = smallFileThreshold;
+        this.largeFileThreshold = largeFileThreshold;
+        this.directConcurrency = directConcurrency;
+
+        BlockingReadStrategy virtualThreads = BlockingReadStrategy.onVirtualThreads();
+        directStrategy = new BlockingReadStrategy();
+        virtualThreadStrategy = virtualThreads;
+        asyncStrategy = new AsyncReadStrategy();
+        mappedStrategy = new MappedReadStrategy(new MappedFileReader(),
+                virtualThreads.getExecutor());
+    }
+
+    @Override
+    public CompletableFuture<String> readFile(Path path, Charset charset) {
+        long size;
+        try {
+            size = Files.size(path);
+        } catch (IOException e) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        int concurrency = inProgress.incrementAndGet();
+        try {
+            return selectStrategy(size, concurrency).readFile(path, charset)
+                    .whenComplete((content, ex) -> inProgress.decrementAndGet());
+        } catch (RuntimeException e) {
+            inProgress.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the strategy to be used for a file of the given size if the
+     * given number of read operations is in progress (including the current
+     * one).
+     *
+     * @param size        the size of the file
+     * @param concurrency the number of read operations in progress
+     * @return the strategy to read this file
+     */
+    public FileReadStrategy selectStrategy(long size, int concurrency) {
+        if (size <= smallFileThreshold) {
+            return (concurrency <= directConcurrency) ? directStrategy : virtualThreadStrategy;
+        }
+        return (size >= largeFileThreshold) ? mappedStrategy : asyncStrategy;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+
+/**
+ * <p>
+ * A publisher streaming the content of a file as a sequence of byte buffers.
+ * </p>
+ * <p>
+ * In contrast to {@link AsyncFileReader#readFile(Path)}, the content of the
+ * file is not collected in memory. Each subscriber causes the file to be
+ * opened using an {@code AsynchronousFileChannel}. Read operations are only
+ * issued if the subscriber has signalled demand; so a slow consumer
+ * automatically throttles reading.
+ * </p>
+ * <p>
+ * The buffers passed to subscribers are obtained from a
+ * {@link ByteBufferPool}. When a subscriber is done with a buffer it should
+ * pass it to the {@link #release(ByteBuffer)} method; then memory
+ * consumption stays constant independent of the file size. (Buffers that are
+ * not released are simply garbage collected.)
+ * </p>
+ */
+public class AsyncFilePublisher implements Flow.Publisher<ByteBuffer> {
+    /**
+     * The path of the file to be read.
+     */
+    private final Path path;
+
+    /**
+     * The pool for the buffers to read data into.
+     */
+    private final ByteBufferPool bufferPool;
+
+    /**
+     * The executor for the channels opened by this publisher; can be null.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new instance of {@code AsyncFilePublisher} whose channels
+     * use the default thread pool.
+     *
+     * @param path       the path of the file to be read
+     * @param bufferPool the pool for the buffers to read data into
+     */
+    public AsyncFilePublisher(Path path, ByteBufferPool bufferPool) {
+        this(path, bufferPool, null);
+    }
+
+    /**
+     * Creates a new instance of {@code AsyncFilePublisher} with an executor
+     * for the channels opened by this publisher.
+     *
+     * @param path       the path of the file to be read
+     * @param bufferPool the pool for the buffers to read data into
+     * @param executor   the executor for the channels (<b>null</b> for the
+     *                   default thread pool)
+     */
+    public AsyncFilePublisher(Path path, ByteBufferPool bufferPool,
+                              ExecutorService executor) {
+        this.path = path;
+        this.bufferPool = bufferPool;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber must not be null");
+        }
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsyncFileReader.openChannel(path, executor);
+        } catch (IOException e) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(e);
+            return;
+        }
+        subscriber.onSubscribe(new FileSubscription(channel, subscriber));
+    }
+
+    /**
+     * Returns a buffer that has been passed to a subscriber, so that it can
+     * be reused for further read operations.
+     *
+     * @param buffer the buffer
+     */
+    public void release(ByteBuffer buffer) {
+        bufferPool.release(buffer);
+    }
+
+    /**
+     * The subscription implementation. It reads a chunk of data whenever
+     * there is demand. At most one read operation is in flight, so that
+     * {@code onNext()} calls are naturally serialized.
+     */
+    private class FileSubscription implements Flow.Subscription,
+            CompletionHandler<Integer, ByteBuffer> {
+        /**
+         * The channel for reading the file.
+         */
+        private final AsynchronousFileChannel channel;
+
+        /**
+         * The subscriber.
+         */
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+
+        /**
+         * The current read position.
+         */
+        private long position;
+
+        /**
+         * The number of buffers requested, but not yet delivered.
+         */
+        private long demand;
+
+        /**
+         * Flag whether a read operation is in flight.
+         */
+        private boolean reading;
+
+        /**
+         * Flag whether this subscription has been terminated.
+         */
+        private boolean terminated;
+
+        public FileSubscription(AsynchronousFileChannel c,
+                                Flow.Subscriber<? super ByteBuffer> s) {
+            channel = c;
+            subscriber = s;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (terminate()) {
+                    subscriber.onError(new IllegalArgumentException(
+                            "Number of requested elements must be positive: " + n));
+                }
+                return;
+            }
+            boolean startRead;
+            synchronized (this) {
+                demand += n;
+                if (demand < 0) {
+                    demand = Long.MAX_VALUE;
+                }
+                startRead = !reading && !terminated;
+                reading |= startRead;
+            }
+            if (startRead) {
+                readChunk(bufferPool.acquire());
+            }
+        }
+
+        @Override
+        public void cancel() {
+            terminate();
+        }
+
+        @Override
+        public void completed(Integer count, ByteBuffer buffer) {
+            if (count < 0) {
+                bufferPool.release(buffer);
+                if (finish()) {
+                    subscriber.onComplete();
+                }
+            } else if (count == 0) {
+                readChunk(buffer);
+            } else {
+                position += count;
+                buffer.flip();
+                if (isTerminated()) {
+                    bufferPool.release(buffer);
+                    closeChannel();
+                    return;
+                }
+                subscriber.onNext(buffer);
+                if (continueReading()) {
+                    readChunk(bufferPool.acquire());
+                }
+            }
+        }
+
+        @Override
+        public void failed(Throwable exc, ByteBuffer buffer) {
+            bufferPool.release(buffer);
+            if (finish()) {
+                subscriber.onError(exc);
+            }
+        }
+
+        /**
+         * Starts a read operation for the next chunk.
+         *
+         * @param buffer the buffer to read the data into
+         */
+        private void readChunk(ByteBuffer buffer) {
+            channel.read(buffer, position, buffer, this);
+        }
+
+        /**
+         * Checks whether after a delivered chunk another read operation should
+         * be started. If not, the flag for the read in flight is reset; so
+         * the next request starts reading again.
+         *
+         * @return a flag whether reading should continue
+         */
+        private synchronized boolean continueReading() {
+            demand--;
+            reading = demand > 0 && !terminated;
+            if (!reading && terminated) {
+                closeChannel();
+            }
+            return reading;
+        }
+
+        /**
+         * Returns a flag whether this subscription has been terminated.
+         *
+         * @return the terminated flag
+         */
+        private synchronized boolean isTerminated() {
+            return terminated;
+        }
+
+        /**
+         * Terminates this subscription. The channel is closed immediately if
+         * no read operation is in flight; otherwise, this happens when the
+         * operation completes.
+         *
+         * @return a flag whether this subscription was active before
+         */
+        private synchronized boolean terminate() {
+            if (terminated) {
+                return false;
+            }
+            terminated = true;
+            if (!reading) {
+                closeChannel();
+            }
+            return true;
+        }
+
+        /**
+         * Terminates this subscription after the read operation in flight
+         * hit the end of the file or failed. The channel is closed.
+         *
+         * @return a flag whether this subscription was active before
+         */
+        private boolean finish() {
+            boolean active;
+            synchronized (this) {
+                active = !terminated;
+                terminated = true;
+                reading = false;
+            }
+            closeChannel();
+            return active;
+        }
+
+        /**
+         * Closes the channel.
+         */
+        private void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -19,21 +19,65 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.CompletionHandler;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 
 /**
  * <p>
  * Class for reading the content of a text file in a single operation using
  * Java's {@code AsynchronousFileChannel}.
  * </p>
+ * <p>
+ * The file is read in chunks of a configurable size. To make use of the
+ * queue depth of modern storage devices, multiple positional read operations
+ * can be in flight at the same time (the <em>read-ahead</em>). Chunks may
+ * complete in arbitrary order; they are put back into the correct order
+ * before their data is appended to the result. Whenever the next chunk in
+ * sequence has been consumed, its buffer is reused for a read operation
+ * further ahead in the file.
+ * </p>
+ * <p>
+ * The data is decoded in a streaming fashion by a {@link ChunkDecoder}, so
+ * that no temporary objects are created per chunk, and characters spanning
+ * chunk boundaries are handled correctly.
+ * </p>
+ * <p>
+ * Optionally, an {@code ExecutorService} can be provided which is used by
+ * all channels opened by this instance to execute completion handlers.
+ * This is especially useful for batch reads of many files via
+ * {@link #readFiles(Collection, int)}.
+ * </p>
  */
 public class AsyncFileReader {
     /**
-     * Buffer size for read operations.
+     * The default size of a chunk read in a single operation.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16384;
+
+    /**
+     * The default number of read operations in flight.
+     */
+    public static final int DEFAULT_READ_AHEAD = 4;
+
+    /**
+     * The charset used if no explicit charset is specified.
+     */
+    public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * The maximum number of buffers kept for reuse by streaming reads.
      */
-    private static final int BUF_SIZE = 1024;
+    private static final int POOLED_BUFFERS = 16;
 
     /**
      * Initial size of the content buffer.
@@ -43,15 +87,99 @@ public class AsyncFileReader {
     /**
      * The completion handler used by this instance.
      */
-    private final CompletionHandler<Integer, ReadContext> handler = createHandler();
+    private final CompletionHandler<Integer, ReadRequest> handler = createHandler();
 
+    /**
+     * The size of a chunk read in a single operation.
+     */
+    private final int chunkSize;
+
+    /**
+     * The maximum number of read operations in flight for a single file.
+     */
+    private final int readAhead;
+
+    /**
+     * The pool for buffers used by streaming reads.
+     */
+    private final ByteBufferPool bufferPool;
+
+    /**
+     * The executor for the channels opened by this instance; can be null.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new instance of {@code AsyncFileReader} with default settings
+     * for the chunk size and the read-ahead.
+     */
+    public AsyncFileReader() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_READ_AHEAD);
+    }
+
+    /**
+     * Creates a new instance of {@code AsyncFileReader} with the given
+     * settings. Channels use the default thread pool.
+     *
+     * @param chunkSize the size of a chunk read in a single operation
+     * @param readAhead the number of read operations in flight
+     * @throws IllegalArgumentException if a parameter is not positive
+     */
+    public AsyncFileReader(int chunkSize, int readAhead) {
+        this(chunkSize, readAhead, null);
+    }
+
+    /**
+     * Creates a new instance of {@code AsyncFileReader} with the given
+     * settings and an executor shared by all channels opened by this
+     * instance. The executor is not shut down by this class.
+     *
+     * @param chunkSize the size of a chunk read in a single operation
+     * @param readAhead the number of read operations in flight
+     * @param executor  the executor for the channels (<b>null</b> for the
+     *                  default thread pool)
+     * @throws IllegalArgumentException if a parameter is not positive
+     */
+    public AsyncFileReader(int chunkSize, int readAhead, ExecutorService executor) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        if (readAhead <= 0) {
+            throw new IllegalArgumentException("Invalid read-ahead: " + readAhead);
+        }
+        this.chunkSize = chunkSize;
+        this.readAhead = readAhead;
+        bufferPool = new ByteBufferPool(chunkSize, POOLED_BUFFERS);
+        this.executor = executor;
+    }
+
+    /**
+     * Reads the given file using the default charset.
+     *
+     * @param path the path of the file to be read
+     * @return a future with the content of the file
+     */
     public CompletableFuture<String> readFile(Path path) {
+        return readFile(path, DEFAULT_CHARSET);
+    }
+
+    /**
+     * Reads the given file using the specified charset.
+     *
+     * @param path    the path of the file to be read
+     * @param charset the charset of the file
+     * @return a future with the content of the file
+     */
+    public CompletableFuture<String> readFile(Path path, Charset charset) {
         CompletableFuture<String> future = new CompletableFuture<>();
         try {
-            AsynchronousFileChannel channel = AsynchronousFileChannel.open(path,
-                    StandardOpenOption.READ);
-            ReadContext context = new ReadContext(channel, future);
-            readBlock(context);
+            AsynchronousFileChannel channel = openChannel(path, executor);
+            ReadContext context = new ReadContext(channel, future, charset);
+            try {
+                context.start(channel.size());
+            } catch (IOException e) {
+                context.fail(e);
+            }
         } catch (IOException e) {
             future.completeExceptionally(e);
         }
@@ -59,13 +187,119 @@ public class AsyncFileReader {
     }
 
     /**
-     * Triggers another read operation for a chunk of data.
+     * Returns a publisher that streams the content of the given file in
+     * chunks of the configured size. Data is only read when a subscriber
+     * requests it. Buffers are taken from a pool shared by all publishers
+     * created by this instance; subscribers should return them via
+     * {@link AsyncFilePublisher#release(ByteBuffer)}.
+     *
+     * @param path the path of the file to be read
+     * @return a publisher for the content of this file
+     */
+    public AsyncFilePublisher readFileStreamed(Path path) {
+        return new AsyncFilePublisher(path, bufferPool, executor);
+    }
+
+    /**
+     * Reads multiple files using the default charset. At most the given
+     * number of files is read concurrently; so the number of open channels
+     * is limited. The resulting map contains a future for each path (in the
+     * iteration order of the collection); the futures complete independently
+     * as soon as the corresponding files have been read.
+     *
+     * @param paths         the paths of the files to be read
+     * @param maxConcurrent the maximum number of files read concurrently
+     * @return a map with futures for the contents of the files
+     * @throws IllegalArgumentException if the concurrency is not positive
+     */
+    public Map<Path, CompletableFuture<String>> readFiles(Collection<Path> paths,
+                                                          int maxConcurrent) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("Invalid concurrency: " + maxConcurrent);
+        }
+        Map<Path, CompletableFuture<String>> results = new LinkedHashMap<>();
+        Queue<Path> pending = new ConcurrentLinkedQueue<>();
+        for (Path path : paths) {
+            if (!results.containsKey(path)) {
+                results.put(path, new CompletableFuture<>());
+                pending.add(path);
+            }
+        }
+
+        int lanes = Math.min(maxConcurrent, pending.size());
+        for (int i = 0; i < lanes; i++) {
+            readNextFile(pending, results);
+        }
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * Opens a channel for reading the given file.
+     *
+     * @param path     the path of the file
+     * @param executor the executor for the channel; can be <b>null</b>
+     * @return the channel
+     * @throws IOException if the file cannot be opened
+     */
+    static AsynchronousFileChannel openChannel(Path path, ExecutorService executor)
+            throws IOException {
+        return (executor == null) ?
+                AsynchronousFileChannel.open(path, StandardOpenOption.READ) :
+                AsynchronousFileChannel.open(path,
+                        Collections.singleton(StandardOpenOption.READ), executor);
+    }
+
+    /**
+     * Reads the next pending file of a batch. When the read operation is
+     * complete, the next file is processed; so each invocation of this
+     * method forms a lane that handles one file at a time. Files whose
+     * futures are completed immediately (e.g. because they cannot be opened)
+     * are handled in a loop to avoid deep recursion.
+     *
+     * @param pending the queue with the paths still to be read
+     * @param results the map with the resulting futures
+     */
+    private void readNextFile(Queue<Path> pending,
+                              Map<Path, CompletableFuture<String>> results) {
+        Path path;
+        while ((path = pending.poll()) != null) {
+            CompletableFuture<String> target = results.get(path);
+            CompletableFuture<String> read = readFile(path);
+            if (!read.isDone()) {
+                read.whenComplete((content, ex) -> {
+                    transferResult(target, content, ex);
+                    readNextFile(pending, results);
+                });
+                return;
+            }
+            read.whenComplete((content, ex) -> transferResult(target, content, ex));
+        }
+    }
+
+    /**
+     * Completes a future with the result of a read operation.
+     *
+     * @param target  the future to be completed
+     * @param content the content read from the file
+     * @param ex      the exception if the operation failed
+     */
+    private static void transferResult(CompletableFuture<String> target, String content,
+                                       Throwable ex) {
+        if (ex != null) {
+            target.completeExceptionally(ex);
+        } else {
+            target.complete(content);
+        }
+    }
+
+    /**
+     * Triggers a read operation for the remaining data of a chunk.
      *
-     * @param context the read context
+     * @param request the request for the chunk
      */
-    private void readBlock(ReadContext context) {
-        context.buffer.clear();
-        context.channel.read(context.buffer, context.position, context, handler);
+    private void readChunk(ReadRequest request) {
+        request.context.channel.read(request.buffer,
+                request.position + request.buffer.position(), request, handler);
     }
 
     /**
@@ -73,36 +307,74 @@ public class AsyncFileReader {
      *
      * @return the handler
      */
-    private CompletionHandler<Integer, ReadContext> createHandler() {
-        return new CompletionHandler<Integer, ReadContext>() {
+    private CompletionHandler<Integer, ReadRequest> createHandler() {
+        return new CompletionHandler<Integer, ReadRequest>() {
             @Override
-            public void completed(Integer count, ReadContext context) {
-                System.out.print('.');
+            public void completed(Integer count, ReadRequest request) {
                 if (count < 0) {
-                    context.close();
-                    context.future.complete(context.content.toString());
+                    // the file has been truncated while it was read
+                    request.context.chunkCompleted(request, true);
+                } else if (request.buffer.hasRemaining()) {
+                    readChunk(request);
                 } else {
-                    context.buffer.flip();
-                    byte[] data = new byte[count];
-                    context.buffer.get(data);
-                    context.content.append(new String(data));
-                    context.position += count;
-                    readBlock(context);
+                    request.context.chunkCompleted(request, false);
                 }
             }
 
             @Override
-            public void failed(Throwable exc, ReadContext context) {
-                context.fail(exc);
+            public void failed(Throwable exc, ReadRequest request) {
+                request.context.fail(exc);
             }
         };
     }
 
+    /**
+     * Internal data class representing a single read operation in flight.
+     * Instances are reused for multiple chunks of the file.
+     */
+    private static class ReadRequest {
+        /**
+         * The context this request belongs to.
+         */
+        private final ReadContext context;
+
+        /**
+         * Buffer for the data of the chunk.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * The index of the chunk currently assigned.
+         */
+        private long chunkIndex;
+
+        /**
+         * The position of the chunk in the file.
+         */
+        private long position;
+
+        /**
+         * Flag whether the chunk has been read completely.
+         */
+        private boolean completed;
+
+        /**
+         * Flag whether the end of the file was hit prematurely.
+         */
+        private boolean eof;
+
+        public ReadRequest(ReadContext ctx, int size) {
+            context = ctx;
+            buffer = ByteBuffer.allocate(size);
+        }
+    }
+
     /**
      * Internal data class holding context information for a file read
-     * operation.
+     * operation. The methods dealing with completed chunks are synchronized
+     * because completion handlers can be invoked concurrently.
      */
-    private static class ReadContext {
+    private class ReadContext {
         /**
          * The channel for the read operation.
          */
@@ -114,25 +386,92 @@ public class AsyncFileReader {
         private final CompletableFuture<String> future;
 
         /**
-         * Buffer for read operations.
+         * The requests for the read operations in flight.
          */
-        private final ByteBuffer buffer;
+        private final ReadRequest[] requests;
 
         /**
-         * The aggregated text content.
+         * The decoder producing the text content.
          */
-        private final StringBuilder content;
+        private final ChunkDecoder decoder;
 
         /**
-         * The current read position.
+         * The size of the file to be read.
          */
-        private int position;
+        private long size;
 
-        public ReadContext(AsynchronousFileChannel c, CompletableFuture<String> f) {
+        /**
+         * The number of chunks to be read.
+         */
+        private long chunkCount;
+
+        /**
+         * The index of the next chunk to be scheduled for reading.
+         */
+        private long nextScheduled;
+
+        /**
+         * The index of the next chunk to be appended to the content.
+         */
+        private long nextAppended;
+
+        /**
+         * Flag whether this read operation is finished.
+         */
+        private boolean finished;
+
+        public ReadContext(AsynchronousFileChannel c, CompletableFuture<String> f,
+                           Charset charset) {
             channel = c;
             future = f;
-            content = new StringBuilder(CONTENT_BUFFER);
-            buffer = ByteBuffer.allocate(BUF_SIZE);
+            requests = new ReadRequest[readAhead];
+            decoder = new ChunkDecoder(charset, CONTENT_BUFFER);
+        }
+
+        /**
+         * Starts reading a file of the given size. The read operations for
+         * the initial chunks are issued.
+         *
+         * @param fileSize the size of the file
+         */
+        public synchronized void start(long fileSize) {
+            size = fileSize;
+            chunkCount = (fileSize + chunkSize - 1) / chunkSize;
+            if (chunkCount == 0) {
+                complete();
+            } else {
+                int count = (int) Math.min(readAhead, chunkCount);
+                for (int i = 0; i < count; i++) {
+                    requests[i] = new ReadRequest(this, (int) Math.min(chunkSize, fileSize));
+                    schedule(requests[i]);
+                }
+            }
+        }
+
+        /**
+         * Notifies this context that a chunk has been read. All chunks that
+         * are now available in sequence are appended to the content, and
+         * their requests are reused for further chunks.
+         *
+         * @param request the request that has been completed
+         * @param eof     flag whether the end of the file was hit
+         */
+        public synchronized void chunkCompleted(ReadRequest request, boolean eof) {
+            request.completed = true;
+            request.eof = eof;
+            while (!finished) {
+                ReadRequest next = requests[(int) (nextAppended % readAhead)];
+                if (!next.completed || next.chunkIndex != nextAppended) {
+                    break;
+                }
+                append(next.buffer);
+                nextAppended++;
+                if (next.eof || nextAppended >= chunkCount) {
+                    complete();
+                } else if (nextScheduled < chunkCount) {
+                    schedule(next);
+                }
+            }
         }
 
         /**
@@ -140,15 +479,54 @@ public class AsyncFileReader {
          *
          * @param ex the exception
          */
-        public void fail(Throwable ex) {
-            future.completeExceptionally(ex);
+        public synchronized void fail(Throwable ex) {
+            if (!finished) {
+                finished = true;
+                future.completeExceptionally(ex);
+                close();
+            }
+        }
+
+        /**
+         * Assigns the next chunk to be read to the given request and starts
+         * the read operation.
+         *
+         * @param request the request
+         */
+        private void schedule(ReadRequest request) {
+            request.chunkIndex = nextScheduled++;
+            request.position = request.chunkIndex * chunkSize;
+            request.completed = false;
+            request.buffer.clear();
+            request.buffer.limit((int) Math.min(request.buffer.capacity(),
+                    size - request.position));
+            readChunk(request);
+        }
+
+        /**
+         * Decodes the data of a chunk and appends it to the content.
+         *
+         * @param buffer the buffer with the chunk data
+         */
+        private void append(ByteBuffer buffer) {
+            buffer.flip();
+            decoder.append(buffer);
+        }
+
+        /**
+         * Completes the resulting future with the aggregated content and
+         * closes the context.
+         */
+        private void complete() {
+            finished = true;
             close();
+            future.complete(decoder.finish());
         }
 
         /**
          * Closes the context. Especially the channel is closed.
          */
-        public void close() {
+        private void close() {
             try {
                 channel.close();
             } catch (IOException e) {
@@ -22,19 +22,25 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Main class for reading a file using {@link AsyncFileReader}. The path to be
- * read is expected to be passed as single command line argument.
+ * read is expected to be passed as first command line argument. Optionally,
+ * the chunk size and the number of read operations in flight can be
+ * specified.
  */
 public class AsyncFileReaderMain {
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.out.println("Usage: AsyncFileReaderMain <path>");
+        if (args.length < 1 || args.length > 3) {
+            System.out.println("Usage: AsyncFileReaderMain <path> [chunkSize [readAhead]]");
             System.exit(1);
         }
 
         Path path = Paths.get(args[0]);
         System.out.println("Reading file " + path);
 
-        AsyncFileReader reader = new AsyncFileReader();
+        int chunkSize = (args.length > 1) ? Integer.parseInt(args[1]) :
+                AsyncFileReader.DEFAULT_CHUNK_SIZE;
+        int readAhead = (args.length > 2) ? Integer.parseInt(args[2]) :
+                AsyncFileReader.DEFAULT_READ_AHEAD;
+        AsyncFileReader reader = new AsyncFileReader(chunkSize, readAhead);
         long startTime = System.currentTimeMillis();
         CompletableFuture<String> future = reader.readFile(path);
         System.out.println("Read in progress...");
@@ -42,7 +48,8 @@ public class AsyncFileReaderMain {
         // This is of course no reactive style!
         String s = future.get(30, TimeUnit.SECONDS);
         long duration = System.currentTimeMillis() - startTime;
-        System.out.println("\n" + s);
-        System.out.println("Read " + s.length() + " bytes in " + duration + " ms.");
+        System.out.println(s);
+        System.out.println("Read " + s.length() + " bytes in " + duration + " ms (chunk size "
+                + chunkSize + ", read ahead " + readAhead + ").");
     }
 }
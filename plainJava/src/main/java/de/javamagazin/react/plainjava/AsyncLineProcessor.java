@@ -0,0 +1,507 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <p>
+ * Class for processing a text file line by line using Java's
+ * {@code AsynchronousFileChannel} without any further framework.
+ * </p>
+ * <p>
+ * This is the counterpart of the Akka {@code FileProcessor}: the input file
+ * is read chunk-wise and split into lines. Empty lines and comment lines are
+ * filtered out; the other lines are converted to lowercase and written to
+ * the output file. The transformation is done by {@link LineTransformer} on
+ * the byte level, so the output is identical to the one of the Akka
+ * version; no string objects are created for lines consisting of ASCII
+ * characters.
+ * </p>
+ * <p>
+ * Reads and writes overlap using double buffering: the output of the chunks
+ * read is collected in one buffer while the other buffer is written to the
+ * output file. When the buffer being filled has reached the write buffer
+ * size, it is written as soon as the previous write is complete, and the
+ * buffers swap roles. If the previous write is still in progress, no further
+ * chunks are read; so a slow output device throttles reading, and the
+ * memory used is bounded.
+ * </p>
+ * <p>
+ * Lines must not exceed a maximum length; otherwise processing fails. An
+ * {@code ExecutorService} can be provided which is used by all channels
+ * opened by this instance to execute completion handlers.
+ * </p>
+ */
+public class AsyncLineProcessor {
+    /**
+     * The default size of a chunk read in a single operation.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = AsyncFileReader.DEFAULT_CHUNK_SIZE;
+
+    /**
+     * The default size of a buffer written in a single operation.
+     */
+    public static final int DEFAULT_WRITE_BUFFER_SIZE = 65536;
+
+    /**
+     * The default maximum length of a line in bytes.
+     */
+    public static final int DEFAULT_MAX_LINE_LENGTH = LineTransformer.DEFAULT_MAX_LINE_LENGTH;
+
+    /**
+     * The options for opening the output file.
+     */
+    private static final Set<OpenOption> WRITE_OPTIONS = Set.of(StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+    /**
+     * The completion handler for read operations.
+     */
+    private final CompletionHandler<Integer, ProcessContext> readHandler = createReadHandler();
+
+    /**
+     * The completion handler for write operations.
+     */
+    private final CompletionHandler<Integer, ProcessContext> writeHandler =
+            createWriteHandler();
+
+    /**
+     * The size of a chunk read in a single operation.
+     */
+    private final int chunkSize;
+
+    /**
+     * The size of the data to be collected before it is written.
+     */
+    private final int writeBufferSize;
+
+    /**
+     * The maximum length of a line in bytes.
+     */
+    private final int maxLineLength;
+
+    /**
+     * The executor for the channels opened by this instance; can be null.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new instance of {@code AsyncLineProcessor} with default
+     * settings.
+     */
+    public AsyncLineProcessor() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_WRITE_BUFFER_SIZE, DEFAULT_MAX_LINE_LENGTH, null);
+    }
+
+    /**
+     * Creates a new instance of {@code AsyncLineProcessor} with the given
+     * settings and an executor shared by all channels opened by this
+     * instance. The executor is not shut down by this class.
+     *
+     * @param chunkSize       the size of a chunk read in a single operation
+     * @param writeBufferSize the size of the data written in a single
+     *                        operation
+     * @param maxLineLength   the maximum length of a line in bytes
+     * @param executor        the executor for the channels (<b>null</b> for
+     *                        the default thread pool)
+     * @throws IllegalArgumentException if a size is not positive
+     */
+    public AsyncLineProcessor(int chunkSize, int writeBufferSize, int maxLineLength,
+                              ExecutorService executor) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        if (writeBufferSize <= 0) {
+            throw new IllegalArgumentException("Invalid write buffer size: " + writeBufferSize);
+        }
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException("Invalid maximum line length: " + maxLineLength);
+        }
+        this.chunkSize = chunkSize;
+        this.writeBufferSize = writeBufferSize;
+        this.maxLineLength = maxLineLength;
+        this.executor = executor;
+    }
+
+    /**
+     * Processes the given input file and writes the result to the output
+     * file. An existing output file is overwritten.
+     *
+     * @param input  the path of the input file
+     * @param output the path of the output file
+     * @return a future with the number of bytes written
+     */
+    public CompletableFuture<Long> processFile(Path input, Path output) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        try {
+            AsynchronousFileChannel in = AsyncFileReader.openChannel(input, executor);
+            try {
+                AsynchronousFileChannel out =
+                        AsynchronousFileChannel.open(output, WRITE_OPTIONS, executor);
+                new ProcessContext(in, out, future).start();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Creates a handler to process the results of a read operation.
+     *
+     * @return the handler
+     */
+    private static CompletionHandler<Integer, ProcessContext> createReadHandler() {
+        return new CompletionHandler<Integer, ProcessContext>() {
+            @Override
+            public void completed(Integer count, ProcessContext context) {
+                context.readCompleted(count);
+            }
+
+            @Override
+            public void failed(Throwable exc, ProcessContext context) {
+                context.fail(exc);
+            }
+        };
+    }
+
+    /**
+     * Creates a handler to process the results of a write operation.
+     *
+     * @return the handler
+     */
+    private static CompletionHandler<Integer, ProcessContext> createWriteHandler() {
+        return new CompletionHandler<Integer, ProcessContext>() {
+            @Override
+            public void completed(Integer count, ProcessContext context) {
+                context.writeCompleted(count);
+            }
+
+            @Override
+            public void failed(Throwable exc, ProcessContext context) {
+                context.fail(exc);
+            }
+        };
+    }
+
+    /**
+     * Internal class holding the state of a single processing operation. The
+     * methods are synchronized because the completion handlers of reads and
+     * writes can be invoked concurrently.
+     */
+    private class ProcessContext {
+        /**
+         * The channel for reading the input file.
+         */
+        private final AsynchronousFileChannel in;
+
+        /**
+         * The channel for writing the output file.
+         */
+        private final AsynchronousFileChannel out;
+
+        /**
+         * The resulting future.
+         */
+        private final CompletableFuture<Long> future;
+
+        /**
+         * The buffer for read operations.
+         */
+        private final ByteBuffer readBuffer;
+
+        /**
+         * Buffer for a line spanning multiple chunks.
+         */
+        private final byte[] carry;
+
+        /**
+         * The number of bytes stored in the carry buffer.
+         */
+        private int carryLength;
+
+        /**
+         * The buffer collecting output.
+         */
+        private ByteBuffer fill;
+
+        /**
+         * The buffer currently written; <b>null</b> if there is no write in
+         * progress.
+         */
+        private ByteBuffer writing;
+
+        /**
+         * The buffer to be filled after the current write.
+         */
+        private ByteBuffer spare;
+
+        /**
+         * The position of the next read operation.
+         */
+        private long readPosition;
+
+        /**
+         * The position of the next write operation.
+         */
+        private long writePosition;
+
+        /**
+         * Flag whether a read operation is in progress.
+         */
+        private boolean reading;
+
+        /**
+         * Flag whether the end of the input file has been reached.
+         */
+        private boolean eof;
+
+        /**
+         * Flag whether this operation is finished.
+         */
+        private boolean finished;
+
+        public ProcessContext(AsynchronousFileChannel in, AsynchronousFileChannel out,
+                              CompletableFuture<Long> future) {
+            this.in = in;
+            this.out = out;
+            this.future = future;
+            readBuffer = ByteBuffer.allocate(chunkSize);
+            carry = new byte[maxLineLength];
+            int bufferSize = writeBufferSize + 2 * chunkSize;
+            fill = ByteBuffer.allocate(bufferSize);
+            spare = ByteBuffer.allocate(bufferSize);
+        }
+
+        /**
+         * Starts processing by reading the first chunk.
+         */
+        public synchronized void start() {
+            readNext();
+        }
+
+        /**
+         * Notifies this context that a read operation is complete. The data
+         * read is processed, and the next operations are triggered.
+         *
+         * @param count the number of bytes read
+         */
+        public synchronized void readCompleted(int count) {
+            if (finished) {
+                return;
+            }
+            reading = false;
+            try {
+                if (count < 0) {
+                    eof = true;
+                    if (carryLength > 0) {
+                        transform(carry, 0, carryLength);
+                        carryLength = 0;
+                    }
+                } else {
+                    readPosition += count;
+                    processChunk(readBuffer.array(), readBuffer.position());
+                }
+                pump();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Notifies this context that a write operation is complete. If data
+         * is remaining, it is written; otherwise, the next operations are
+         * triggered.
+         *
+         * @param count the number of bytes written
+         */
+        public synchronized void writeCompleted(int count) {
+            if (finished) {
+                return;
+            }
+            writePosition += count;
+            if (writing.hasRemaining()) {
+                out.write(writing, writePosition, this, writeHandler);
+            } else {
+                spare = writing;
+                writing = null;
+                pump();
+            }
+        }
+
+        /**
+         * Marks this operation as failed. The channels are closed.
+         *
+         * @param ex the exception
+         */
+        public synchronized void fail(Throwable ex) {
+            if (!finished) {
+                finished = true;
+                close();
+                future.completeExceptionally(ex);
+            }
+        }
+
+        /**
+         * Triggers the next operations based on the current state: a full
+         * buffer (or the remaining data at the end of the input) is written
+         * if no write is in progress, and the next chunk is read if the
+         * buffer being filled has space left.
+         */
+        private void pump() {
+            if (writing == null && fill.position() > 0
+                    && (eof || fill.position() >= writeBufferSize)) {
+                startWrite();
+            }
+            if (eof) {
+                if (writing == null) {
+                    complete();
+                }
+            } else if (!reading && fill.position() < writeBufferSize) {
+                readNext();
+            }
+        }
+
+        /**
+         * Starts a read operation for the next chunk.
+         */
+        private void readNext() {
+            reading = true;
+            readBuffer.clear();
+            in.read(readBuffer, readPosition, this, readHandler);
+        }
+
+        /**
+         * Starts writing the buffer that has been filled and switches to the
+         * spare buffer for further output.
+         */
+        private void startWrite() {
+            writing = fill;
+            writing.flip();
+            fill = spare;
+            fill.clear();
+            spare = null;
+            out.write(writing, writePosition, this, writeHandler);
+        }
+
+        /**
+         * Splits a chunk of data into lines and transforms them. A line that
+         * started in a previous chunk is completed from the carry buffer; an
+         * incomplete line at the end of the chunk is stored there.
+         *
+         * @param data   the array with the chunk
+         * @param length the length of the chunk
+         * @throws IOException if a line is too long
+         */
+        private void processChunk(byte[] data, int length) throws IOException {
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (LineTransformer.isLineEnd(data[i])) {
+                    if (carryLength > 0) {
+                        appendToCarry(data, 0, i);
+                        transform(carry, 0, carryLength);
+                        carryLength = 0;
+                    } else {
+                        checkLength(i - lineStart);
+                        transform(data, lineStart, i);
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            appendToCarry(data, lineStart, length);
+        }
+
+        /**
+         * Transforms a line and adds the result to the buffer being filled.
+         * The buffer is enlarged if necessary.
+         *
+         * @param data  the array with the line
+         * @param from  the start index of the line
+         * @param until the end index of the line (exclusive)
+         */
+        private void transform(byte[] data, int from, int until) {
+            fill = LineTransformer.ensureRemaining(fill, until - from);
+            LineTransformer.transformLine(data, from, until, fill);
+        }
+
+        /**
+         * Appends a part of a line to the carry buffer.
+         *
+         * @param data  the array with the data
+         * @param from  the start index
+         * @param until the end index (exclusive)
+         * @throws IOException if the line becomes too long
+         */
+        private void appendToCarry(byte[] data, int from, int until) throws IOException {
+            int length = until - from;
+            checkLength(carryLength + length);
+            System.arraycopy(data, from, carry, carryLength, length);
+            carryLength += length;
+        }
+
+        /**
+         * Checks whether a line exceeds the maximum length.
+         *
+         * @param length the length of the line
+         * @throws IOException if the line is too long
+         */
+        private void checkLength(int length) throws IOException {
+            if (length > maxLineLength) {
+                throw new IOException("Line exceeds maximum length of " + maxLineLength
+                        + " bytes.");
+            }
+        }
+
+        /**
+         * Completes the resulting future with the number of bytes written and
+         * closes the channels.
+         */
+        private void complete() {
+            finished = true;
+            close();
+            future.complete(writePosition);
+        }
+
+        /**
+         * Closes the channels.
+         */
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Main class for processing a file using {@link AsyncLineProcessor}. The
+ * paths to the input and output files are expected as command line
+ * arguments. Optionally, the chunk size and the write buffer size can be
+ * specified.
+ */
+public class AsyncLineProcessorMain {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 4) {
+            System.out.println("Usage: AsyncLineProcessorMain <input> <output> " +
+                    "[chunkSize [writeBufferSize]]");
+            System.exit(1);
+        }
+
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        System.out.println("Processing " + input + " to " + output + ".");
+
+        int chunkSize = (args.length > 2) ? Integer.parseInt(args[2]) :
+                AsyncLineProcessor.DEFAULT_CHUNK_SIZE;
+        int writeBufferSize = (args.length > 3) ? Integer.parseInt(args[3]) :
+                AsyncLineProcessor.DEFAULT_WRITE_BUFFER_SIZE;
+        AsyncLineProcessor processor = new AsyncLineProcessor(chunkSize, writeBufferSize,
+                LineTransformer.DEFAULT_MAX_LINE_LENGTH, null);
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<Long> future = processor.processFile(input, output);
+        // Block to get the result of this test driver.
+        // This is of course no reactive style!
+        long count = future.get();
+        long duration = System.currentTimeMillis() - startTime;
+        System.out.println("Written " + count + " bytes in " + duration + " ms.");
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link FileReadStrategy} implementation that reads files asynchronously
+ * using an {@link AsyncFileReader}.
+ */
+public class AsyncReadStrategy implements FileReadStrategy {
+    /**
+     * The reader for the files.
+     */
+    private final AsyncFileReader reader;
+
+    /**
+     * Creates a new instance of {@code AsyncReadStrategy} with a reader using
+     * default settings.
+     */
+    public AsyncReadStrategy() {
+        this(new AsyncFileReader());
+    }
+
+    /**
+     * Creates a new instance of {@code AsyncReadStrategy} with the given
+     * reader.
+     *
+     * @param reader the reader for the files
+     */
+    public AsyncReadStrategy(AsyncFileReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public CompletableFuture<String> readFile(Path path, Charset charset) {
+        return reader.readFile(path, charset);
+    }
+}
@@ -16,29 +16,93 @@
 package de.javamagazin.react.plainjava;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
+ * <p>
  * Example class for reading a file in the traditional blocking style. The
- * path to be read is expected to be passed as single command line argument.
+ * path to be read is expected to be passed as first command line argument.
+ * </p>
+ * <p>
+ * {@code Files.readAllBytes()} cannot read files larger than 2 GB. Such files
+ * are read using a {@link MappedFileReader}; this mode can also be enforced
+ * by passing the string <em>mapped</em> as second argument.
+ * </p>
  */
 public class BlockingFileReader {
+    /**
+     * Command line option to enforce memory-mapped reading.
+     */
+    private static final String OPT_MAPPED = "mapped";
+
+    /**
+     * The maximum size of a file that can be read into a byte array.
+     */
+    private static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.out.println("Usage: BlockingFileReader <path>");
+        if (args.length < 1 || args.length > 2 ||
+                (args.length == 2 && !OPT_MAPPED.equals(args[1]))) {
+            System.out.println("Usage: BlockingFileReader <path> [" + OPT_MAPPED + "]");
             System.exit(1);
         }
 
         Path path = Paths.get(args[0]);
         System.out.println("Reading file " + path);
 
+        if (args.length == 2 || Files.size(path) > MAX_ARRAY_SIZE) {
+            readMapped(path);
+        } else {
+            long startTime = System.currentTimeMillis();
+            byte[] bytes = Files.readAllBytes(path);
+            long duration = System.currentTimeMillis() - startTime;
+
+            System.out.println(new String(bytes));
+            System.out.println("Read " + bytes.length + " bytes in " + duration + " ms.");
+        }
+    }
+
+    /**
+     * Reads a file using memory-mapped I/O and writes its content directly
+     * to the console.
+     *
+     * @param path the path of the file
+     * @throws IOException if an I/O error occurs
+     */
+    private static void readMapped(Path path) throws IOException {
+        WritableByteChannel out = Channels.newChannel(System.out);
         long startTime = System.currentTimeMillis();
-        byte[] bytes = Files.readAllBytes(path);
+        long size;
+        try {
+            size = new MappedFileReader().readFile(path, window -> write(out, window));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
         long duration = System.currentTimeMillis() - startTime;
 
-        System.out.println(new String(bytes));
-        System.out.println("Read " + bytes.length + " bytes in " + duration + " ms.");
+        System.out.println();
+        System.out.println("Read " + size + " bytes in " + duration + " ms (mapped).");
+    }
+
+    /**
+     * Writes the content of a buffer to a channel.
+     *
+     * @param out    the target channel
+     * @param buffer the buffer
+     */
+    private static void write(WritableByteChannel out, ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
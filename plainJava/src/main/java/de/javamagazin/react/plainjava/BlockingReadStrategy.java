@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>
+ * A {@link FileReadStrategy} implementation that reads files using blocking
+ * I/O.
+ * </p>
+ * <p>
+ * The blocking read operation is executed by an {@code Executor}. By
+ * default, this is the calling thread. Blocking I/O is cheapest for small
+ * files, but it ties up a thread for the duration of the read. To make this
+ * affordable under high concurrency, the {@link #onVirtualThreads()} factory
+ * method creates an instance that runs each read on its own virtual thread.
+ * </p>
+ */
+public class BlockingReadStrategy implements FileReadStrategy {
+    /**
+     * The executor for the read operations.
+     */
+    private final Executor executor;
+
+    /**
+     * Creates a new instance of {@code BlockingReadStrategy} that reads files
+     * in the calling thread.
+     */
+    public BlockingReadStrategy() {
+        this(Runnable::run);
+    }
+
+    /**
+     * Creates a new instance of {@code BlockingReadStrategy} that reads files
+     * using the given executor.
+     *
+     * @param executor the executor for the read operations
+     */
+    public BlockingReadStrategy(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a new instance of {@code BlockingReadStrategy} that executes
+     * each read operation on a new virtual thread. Virtual threads are
+     * available as of Java 21; on older Java versions, a pool of daemon
+     * threads is used instead.
+     *
+     * @return the new instance
+     */
+    public static BlockingReadStrategy onVirtualThreads() {
+        return new BlockingReadStrategy(createVirtualThreadExecutor());
+    }
+
+    /**
+     * Returns the executor used by this strategy.
+     *
+     * @return the executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public CompletableFuture<String> readFile(Path path, Charset charset) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(new String(Files.readAllBytes(path), charset));
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task. The method
+     * is looked up via reflection, so that this class can be compiled and run
+     * on Java versions without virtual threads.
+     *
+     * @return the executor
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * A simple thread-safe pool for byte buffers of a fixed size.
+ * </p>
+ * <p>
+ * Buffers are allocated as direct buffers, so that I/O operations do not
+ * require an additional copy. If the pool is empty, a new buffer is
+ * allocated; the number of buffers kept for reuse is limited, so that a
+ * burst does not cause the pool to grow permanently.
+ * </p>
+ */
+public class ByteBufferPool {
+    /**
+     * The size of the buffers managed by this pool.
+     */
+    private final int bufferSize;
+
+    /**
+     * The queue storing the buffers available for reuse.
+     */
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    /**
+     * Creates a new instance of {@code ByteBufferPool}.
+     *
+     * @param bufferSize the size of the buffers
+     * @param maxPooled  the maximum number of buffers kept for reuse
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        buffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Returns the size of the buffers managed by this pool.
+     *
+     * @return the buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Obtains a buffer from this pool. The buffer is cleared.
+     *
+     * @return the buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to this pool, so that it can be reused. Buffers not
+     * compatible with this pool are ignored.
+     *
+     * @param buffer the buffer
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && buffer.capacity() == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * <p>
+ * Internal helper class for decoding text that is read in chunks.
+ * </p>
+ * <p>
+ * The data is decoded in a streaming fashion using a {@code CharsetDecoder}
+ * and a character buffer that are reused for all chunks. Bytes of a
+ * character that spans two chunks are carried over to the next chunk.
+ * Malformed input is replaced rather than causing the operation to fail.
+ * Instances are not thread-safe.
+ * </p>
+ */
+class ChunkDecoder {
+    /**
+     * Size of the buffer for decoded characters.
+     */
+    private static final int DECODE_BUFFER = 4096;
+
+    /**
+     * Size of the buffer for the bytes of an incomplete character at the end
+     * of a chunk.
+     */
+    private static final int REMAINDER_BUFFER = 16;
+
+    /**
+     * The aggregated text content.
+     */
+    private final StringBuilder content;
+
+    /**
+     * The decoder for the data.
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * Buffer for decoded characters.
+     */
+    private final CharBuffer chars;
+
+    /**
+     * Buffer for the bytes of an incomplete character.
+     */
+    private final ByteBuffer remainder;
+
+    /**
+     * Creates a new instance of {@code ChunkDecoder}.
+     *
+     * @param charset         the charset of the data
+     * @param initialCapacity the initial capacity of the content buffer
+     */
+    public ChunkDecoder(Charset charset, int initialCapacity) {
+        content = new StringBuilder(initialCapacity);
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        chars = CharBuffer.allocate(DECODE_BUFFER);
+        remainder = ByteBuffer.allocate(REMAINDER_BUFFER);
+    }
+
+    /**
+     * Decodes the data of a chunk and appends it to the content. If the
+     * previous chunk ended with an incomplete character, its bytes are
+     * completed first. Bytes at the end of this chunk which do not form a
+     * complete character are stored for the next chunk. The buffer is
+     * expected to be ready for reading; it is fully consumed.
+     *
+     * @param buffer the buffer with the chunk data
+     */
+    public void append(ByteBuffer buffer) {
+        while (remainder.position() > 0 && buffer.hasRemaining()) {
+            remainder.put(buffer.get());
+            remainder.flip();
+            decode(remainder, false);
+            remainder.compact();
+        }
+        decode(buffer, false);
+        remainder.put(buffer);
+    }
+
+    /**
+     * Finishes decoding and returns the aggregated content. Pending bytes of
+     * an incomplete character are decoded (resulting in a replacement
+     * character).
+     *
+     * @return the decoded text
+     */
+    public String finish() {
+        remainder.flip();
+        decode(remainder, true);
+        while (decoder.flush(chars).isOverflow()) {
+            flushChars();
+        }
+        flushChars();
+        return content.toString();
+    }
+
+    /**
+     * Decodes the given bytes and appends the resulting characters to the
+     * content.
+     *
+     * @param bytes      the buffer with the bytes to decode
+     * @param endOfInput flag whether no more input follows
+     */
+    private void decode(ByteBuffer bytes, boolean endOfInput) {
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            flushChars();
+        } while (result.isOverflow());
+    }
+
+    /**
+     * Appends the characters in the decode buffer to the content and clears
+     * the buffer.
+     */
+    private void flushChars() {
+        chars.flip();
+        content.append(chars);
+        chars.clear();
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * An interface abstracting over the different ways to read a text file.
+ * </p>
+ * <p>
+ * This project contains multiple implementations for reading a file that
+ * are based on different I/O models. Via this interface, a concrete
+ * implementation can be selected at runtime. All implementations return the
+ * content of the file asynchronously; depending on the strategy, the
+ * resulting future may already be completed when the method returns.
+ * </p>
+ */
+public interface FileReadStrategy {
+    /**
+     * Reads the given file using the specified charset.
+     *
+     * @param path    the path of the file to be read
+     * @param charset the charset of the file
+     * @return a future with the content of the file
+     */
+    CompletableFuture<String> readFile(Path path, Charset charset);
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * <p>
+ * Internal helper class for transforming the lines of a text file on the
+ * byte level.
+ * </p>
+ * <p>
+ * A line is trimmed, and empty lines and comment lines (starting with
+ * <em>#</em>) are dropped. The remaining lines are converted to lowercase and
+ * terminated by the platform line separator. ASCII characters are lowercased
+ * in place; only lines containing non-ASCII characters are decoded to
+ * strings. The result is the same as if the lines were decoded as UTF-8 and
+ * processed as strings; it matches the output of the Akka
+ * {@code FileProcessor}.
+ * </p>
+ * <p>
+ * Lines can be terminated by <em>\n</em>, <em>\r</em>, or <em>\r\n</em>
+ * (which yields an additional empty line that is dropped). The methods of
+ * this class are stateless and thread-safe.
+ * </p>
+ */
+final class LineTransformer {
+    /**
+     * The default maximum length of a line in bytes.
+     */
+    public static final int DEFAULT_MAX_LINE_LENGTH = 8192;
+
+    /**
+     * The bytes of the line separator.
+     */
+    static final byte[] LINE_SEPARATOR =
+            System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The maximum factor by which the output of a line can be larger than
+     * the input. (Malformed input bytes are replaced by a 3-byte
+     * replacement character.)
+     */
+    private static final int MAX_EXPANSION = 3;
+
+    /**
+     * The byte starting a comment line.
+     */
+    private static final byte COMMENT_PREFIX = '#';
+
+    private LineTransformer() {
+    }
+
+    /**
+     * Checks whether the given byte terminates a line.
+     *
+     * @param b the byte
+     * @return a flag whether this is a line terminator
+     */
+    public static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * Returns the maximum number of bytes produced by
+     * {@link #transformLine(byte[], int, int, ByteBuffer)} for a line of the
+     * given length. This can be used to make sure that the output buffer is
+     * large enough.
+     *
+     * @param length the length of the line
+     * @return the maximum length of the output
+     */
+    public static int maxOutputLength(int length) {
+        return MAX_EXPANSION * length + LINE_SEPARATOR.length;
+    }
+
+    /**
+     * Makes sure that the given buffer has enough space for the output of a
+     * line of the given length. If necessary, a larger buffer is allocated
+     * and the data of the buffer is copied into it.
+     *
+     * @param buffer the output buffer (in write mode)
+     * @param length the length of the line
+     * @return the buffer to be used for the output of the line
+     */
+    public static ByteBuffer ensureRemaining(ByteBuffer buffer, int length) {
+        int required = maxOutputLength(length);
+        if (buffer.remaining() >= required) {
+            return buffer;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(
+                Math.max(2 * buffer.capacity(), buffer.position() + required));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    /**
+     * Transforms a single line (without its terminator) and writes the
+     * result (if any) into the given buffer. Note that the array with the
+     * data of the line may be modified. The buffer must have at least
+     * {@link #maxOutputLength(int)} bytes remaining; this can be achieved
+     * using {@link #ensureRemaining(ByteBuffer, int)}.
+     *
+     * @param data  the array with the line
+     * @param from  the start index of the line
+     * @param until the end index of the line (exclusive)
+     * @param out   the buffer for the output
+     */
+    public static void transformLine(byte[] data, int from, int until, ByteBuffer out) {
+        int start = from;
+        int end = until;
+        while (start < end && isWhitespace(data[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(data[end - 1])) {
+            end--;
+        }
+
+        if (start < end && data[start] != COMMENT_PREFIX) {
+            boolean ascii = true;
+            for (int i = start; i < end; i++) {
+                byte b = data[i];
+                if (b < 0) {
+                    ascii = false;
+                } else if (b >= 'A' && b <= 'Z') {
+                    data[i] = (byte) (b + ('a' - 'A'));
+                }
+            }
+
+            if (ascii) {
+                out.put(data, start, end - start);
+            } else {
+                out.put(new String(data, start, end - start, StandardCharsets.UTF_8)
+                        .toLowerCase(Locale.ENGLISH).getBytes(StandardCharsets.UTF_8));
+            }
+            out.put(LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * Checks whether a byte is whitespace in the sense of
+     * {@code String.trim()}, i.e. a control character or a space.
+     *
+     * @param b the byte
+     * @return a flag whether this byte is whitespace
+     */
+    private static boolean isWhitespace(byte b) {
+        return (b & 0xFF) <= ' ';
+    }
+}
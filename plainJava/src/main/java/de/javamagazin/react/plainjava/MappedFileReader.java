@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Class for reading files of arbitrary size using memory-mapped I/O.
+ * </p>
+ * <p>
+ * A single mapped buffer can cover at most 2 GB. Therefore, this class maps
+ * a file as a sequence of windows of a configurable size and passes them one
+ * by one to a consumer. The data is accessed directly in the page cache;
+ * it is not copied to the heap.
+ * </p>
+ * <p>
+ * Note that a mapped buffer remains valid until it is garbage collected.
+ * Consumers should not keep references to the windows passed to them, so
+ * that the mappings can be released.
+ * </p>
+ */
+public class MappedFileReader {
+    /**
+     * The default size of a mapped window.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The size of a mapped window.
+     */
+    private final int windowSize;
+
+    /**
+     * Creates a new instance of {@code MappedFileReader} with the default
+     * window size.
+     */
+    public MappedFileReader() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a new instance of {@code MappedFileReader} with the given
+     * window size.
+     *
+     * @param windowSize the size of a mapped window
+     * @throws IllegalArgumentException if the window size is not positive
+     */
+    public MappedFileReader(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Invalid window size: " + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Maps the given file window by window and passes the windows to the
+     * consumer in order.
+     *
+     * @param path     the path of the file to be read
+     * @param consumer the consumer for the mapped windows
+     * @return the number of bytes read
+     * @throws IOException if an I/O error occurs
+     */
+    public long readFile(Path path, Consumer<? super ByteBuffer> consumer)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(windowSize, size - position);
+                MappedByteBuffer window =
+                        channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                consumer.accept(window);
+                position += length;
+            }
+            return size;
+        }
+    }
+}
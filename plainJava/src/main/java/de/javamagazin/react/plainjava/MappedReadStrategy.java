@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>
+ * A {@link FileReadStrategy} implementation that reads files using
+ * memory-mapped I/O based on a {@link MappedFileReader}.
+ * </p>
+ * <p>
+ * The mapped windows are decoded directly, without copying their data to
+ * the heap first. As accessing a mapped buffer may block on page faults,
+ * the operation is executed by an {@code Executor}; by default, this is the
+ * calling thread.
+ * </p>
+ * <p>
+ * As the whole content is decoded into a single {@code String}, the size of
+ * files is limited: files which could yield more characters than a string
+ * can hold are rejected before they are read. Such files have to be
+ * processed chunk-wise via the consumer-based API of
+ * {@link MappedFileReader}.
+ * </p>
+ */
+public class MappedReadStrategy implements FileReadStrategy {
+    /**
+     * Initial size of the content buffer.
+     */
+    private static final int CONTENT_BUFFER = 8192;
+
+    /**
+     * The maximum number of characters of the content. This is the maximum
+     * array size supported by most JVMs.
+     */
+    private static final long MAX_CONTENT_LENGTH = Integer.MAX_VALUE - 8;
+
+    /**
+     * The reader for the files.
+     */
+    private final MappedFileReader reader;
+
+    /**
+     * The executor for the read operations.
+     */
+    private final Executor executor;
+
+    /**
+     * Creates a new instance of {@code MappedReadStrategy} with a reader
+     * using default settings which reads files in the calling thread.
+     */
+    public MappedReadStrategy() {
+        this(new MappedFileReader(), Runnable::run);
+    }
+
+    /**
+     * Creates a new instance of {@code MappedReadStrategy} with the given
+     * reader and executor.
+     *
+     * @param reader   the reader for the files
+     * @param executor the executor for the read operations
+     */
+    public MappedReadStrategy(MappedFileReader reader, Executor executor) {
+        this.reader = reader;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<String> readFile(Path path, Charset charset) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            ChunkDecoder decoder = new ChunkDecoder(charset, CONTENT_BUFFER);
+            try {
+                checkSize(path, charset);
+                reader.readFile(path, decoder::append);
+                future.complete(decoder.finish());
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Checks whether the content of the given file fits into a string. The
+     * number of characters is estimated based on the maximum number of
+     * characters the charset produces per byte.
+     *
+     * @param path    the path of the file
+     * @param charset the charset
+     * @throws IOException if the file is too large or its size cannot be
+     *                     determined
+     */
+    private static void checkSize(Path path, Charset charset) throws IOException {
+        long size = Files.size(path);
+        if (size * (double) charset.newDecoder().maxCharsPerByte() > MAX_CONTENT_LENGTH) {
+            throw new IOException("File " + path + " with " + size +
+                    " bytes is too large to be decoded into a string; use the " +
+                    "consumer-based API of MappedFileReader instead.");
+        }
+    }
+}
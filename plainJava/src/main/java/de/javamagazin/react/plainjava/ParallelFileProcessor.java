@@ -0,0 +1,421 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.plainjava;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>
+ * Class for processing a text file line by line on multiple cores.
+ * </p>
+ * <p>
+ * The transformation is the same as the one of {@link AsyncLineProcessor}
+ * (and of the Akka {@code FileProcessor}), but the file is not processed
+ * sequentially. It is split into byte ranges of a configurable size; the end
+ * of each range is moved forward to the next line break, so that no line is
+ * split. The ranges are memory-mapped and transformed in parallel by tasks
+ * of a {@code ForkJoinPool}. As the length of the output of a range is only
+ * known after it has been transformed, the ranges are processed in windows:
+ * when all ranges of a window have been transformed, the offsets of their
+ * outputs are computed, and the outputs are written in parallel into the
+ * output file at these offsets. A window contains at most a few ranges per
+ * thread of the pool, and the total size of its ranges is limited by a
+ * configurable number of bytes. As the output buffers of a window are held
+ * in memory until they are written, the memory used is proportional to this
+ * limit (not to the number of threads), and the output is identical to the
+ * one of a sequential run.
+ * </p>
+ * <p>
+ * The main function expects the paths to the input and output files and
+ * optionally the range size, the parallelism, and the maximum window size
+ * as arguments.
+ * </p>
+ */
+public class ParallelFileProcessor {
+    /**
+     * The default size of a range.
+     */
+    public static final int DEFAULT_RANGE_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The default maximum number of input bytes in a window.
+     */
+    public static final long DEFAULT_MAX_WINDOW_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * The number of ranges per thread of the pool in a window. Using
+     * multiple ranges per thread balances the load if some ranges take
+     * longer than others.
+     */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /**
+     * The pool executing the tasks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The size of a range.
+     */
+    private final int rangeSize;
+
+    /**
+     * The maximum number of input bytes in a window.
+     */
+    private final long maxWindowBytes;
+
+    /**
+     * The maximum length of a line in bytes.
+     */
+    private final int maxLineLength;
+
+    /**
+     * Creates a new instance of {@code ParallelFileProcessor} with default
+     * settings. The common pool is used.
+     */
+    public ParallelFileProcessor() {
+        this(ForkJoinPool.commonPool(), DEFAULT_RANGE_SIZE, DEFAULT_MAX_WINDOW_BYTES,
+                LineTransformer.DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * Creates a new instance of {@code ParallelFileProcessor} with the given
+     * settings. The pool is not shut down by this class. A window always
+     * contains at least one range, even if the range is larger than the
+     * maximum window size.
+     *
+     * @param pool           the pool executing the tasks
+     * @param rangeSize      the size of a range
+     * @param maxWindowBytes the maximum number of input bytes in a window
+     * @param maxLineLength  the maximum length of a line in bytes
+     * @throws IllegalArgumentException if a size is invalid
+     */
+    public ParallelFileProcessor(ForkJoinPool pool, int rangeSize, long maxWindowBytes,
+                                 int maxLineLength) {
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException("Invalid maximum line length: " + maxLineLength);
+        }
+        if (rangeSize <= 0 || rangeSize > Integer.MAX_VALUE - maxLineLength - 1) {
+            throw new IllegalArgumentException("Invalid range size: " + rangeSize);
+        }
+        if (maxWindowBytes <= 0) {
+            throw new IllegalArgumentException("Invalid window size: " + maxWindowBytes);
+        }
+        this.pool = pool;
+        this.rangeSize = rangeSize;
+        this.maxWindowBytes = maxWindowBytes;
+        this.maxLineLength = maxLineLength;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 5) {
+            System.out.println("Usage: ParallelFileProcessor <input> <output> " +
+                    "[rangeSize [parallelism [maxWindowBytes]]]");
+            System.exit(1);
+        }
+
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        System.out.println("Processing " + input + " to " + output + ".");
+
+        int rangeSize = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_RANGE_SIZE;
+        ForkJoinPool pool = (args.length > 3) ? new ForkJoinPool(Integer.parseInt(args[3])) :
+                ForkJoinPool.commonPool();
+        long maxWindowBytes = (args.length > 4) ? Long.parseLong(args[4]) :
+                DEFAULT_MAX_WINDOW_BYTES;
+        ParallelFileProcessor processor = new ParallelFileProcessor(pool, rangeSize,
+                maxWindowBytes, LineTransformer.DEFAULT_MAX_LINE_LENGTH);
+        long startTime = System.currentTimeMillis();
+        long count = processor.processFile(input, output);
+        long duration = System.currentTimeMillis() - startTime;
+        System.out.println("Written " + count + " bytes in " + duration + " ms using "
+                + pool.getParallelism() + " threads.");
+        pool.shutdown();
+    }
+
+    /**
+     * Processes the given input file and writes the result to the output
+     * file. An existing output file is overwritten. This method blocks until
+     * the whole file has been processed.
+     *
+     * @param input  the path of the input file
+     * @param output the path of the output file
+     * @return the number of bytes written
+     * @throws IOException if an I/O error occurs or a line is too long
+     */
+    public long processFile(Path input, Path output) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            int rangesPerWindow = pool.getParallelism() * RANGES_PER_THREAD;
+            long position = 0;
+            long outputPosition = 0;
+            while (position < size) {
+                List<RangeTask> ranges = new ArrayList<>(rangesPerWindow);
+                long windowBytes = 0;
+                while (ranges.size() < rangesPerWindow && position < size &&
+                        (ranges.isEmpty() || windowBytes + rangeSize <= maxWindowBytes)) {
+                    long end = alignedEnd(in, position + rangeSize, size);
+                    ranges.add(new RangeTask(in, position, (int) (end - position)));
+                    windowBytes += end - position;
+                    position = end;
+                }
+                outputPosition += invoke(new WindowTask(ranges, out, outputPosition));
+            }
+            return outputPosition;
+        }
+    }
+
+    /**
+     * Determines the end of a range. Starting at the given nominal end, the
+     * input is searched for the next line break; the range ends after it.
+     *
+     * @param channel the channel for the input file
+     * @param end     the nominal end of the range
+     * @param size    the size of the input file
+     * @return the end of the range
+     * @throws IOException if an I/O error occurs or a line is too long
+     */
+    private long alignedEnd(FileChannel channel, long end, long size) throws IOException {
+        if (end >= size) {
+            return size;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(maxLineLength + 1);
+        while (buffer.hasRemaining() && end + buffer.position() < size) {
+            if (channel.read(buffer, end + buffer.position()) < 0) {
+                break;
+            }
+        }
+        for (int i = 0; i < buffer.position(); i++) {
+            if (LineTransformer.isLineEnd(buffer.get(i))) {
+                return end + i + 1;
+            }
+        }
+        if (end + buffer.position() >= size) {
+            return size;
+        }
+        throw lineTooLong(maxLineLength);
+    }
+
+    /**
+     * Executes a task in the pool. I/O exceptions thrown by the task are
+     * unwrapped.
+     *
+     * @param task the task
+     * @param <T>  the result type of the task
+     * @return the result of the task
+     * @throws IOException if an I/O error occurs
+     */
+    private <T> T invoke(RecursiveTask<T> task) throws IOException {
+        try {
+            return pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns an exception reporting a line that exceeds the maximum length.
+     *
+     * @param maxLineLength the maximum line length
+     * @return the exception
+     */
+    private static IOException lineTooLong(int maxLineLength) {
+        return new IOException("Line exceeds maximum length of " + maxLineLength + " bytes.");
+    }
+
+    /**
+     * A task processing a window of ranges. The ranges are transformed in
+     * parallel; then their outputs are written in parallel at the correct
+     * offsets. The result is the number of bytes written.
+     */
+    private static class WindowTask extends RecursiveTask<Long> {
+        /**
+         * The tasks for the ranges of this window.
+         */
+        private final List<RangeTask> ranges;
+
+        /**
+         * The channel for the output file.
+         */
+        private final FileChannel out;
+
+        /**
+         * The position in the output file where this window starts.
+         */
+        private final long position;
+
+        WindowTask(List<RangeTask> ranges, FileChannel out, long position) {
+            this.ranges = ranges;
+            this.out = out;
+            this.position = position;
+        }
+
+        @Override
+        protected Long compute() {
+            invokeAll(ranges);
+            List<WriteTask> writes = new ArrayList<>(ranges.size());
+            long offset = position;
+            for (RangeTask range : ranges) {
+                ByteBuffer data = range.getOutput();
+                writes.add(new WriteTask(out, data, offset));
+                offset += data.remaining();
+            }
+            invokeAll(writes);
+            return offset - position;
+        }
+    }
+
+    /**
+     * A task transforming the lines of a single range of the input file. The
+     * range is memory-mapped, and the output is collected in a buffer.
+     */
+    private class RangeTask extends RecursiveAction {
+        /**
+         * The channel for the input file.
+         */
+        private final FileChannel in;
+
+        /**
+         * The start position of the range.
+         */
+        private final long start;
+
+        /**
+         * The length of the range.
+         */
+        private final int length;
+
+        /**
+         * The output of this range; available after the task is done.
+         */
+        private ByteBuffer output;
+
+        RangeTask(FileChannel in, long start, int length) {
+            this.in = in;
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Returns a buffer with the output of this range ready to be read.
+         *
+         * @return the output buffer
+         */
+        public ByteBuffer getOutput() {
+            return output;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, start, length);
+                byte[] line = new byte[maxLineLength];
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (LineTransformer.isLineEnd(data.get(i))) {
+                        buffer = transformLine(data, lineStart, i, line, buffer);
+                        lineStart = i + 1;
+                    } else if (i - lineStart >= maxLineLength) {
+                        throw lineTooLong(maxLineLength);
+                    }
+                }
+                // only the last range can end without a line break
+                buffer = transformLine(data, lineStart, length, line, buffer);
+                buffer.flip();
+                output = buffer;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Transforms a single line of the mapped range. The line is copied
+         * into the given array in a bulk operation and then transformed into
+         * the output buffer.
+         *
+         * @param data   the mapped range
+         * @param from   the start index of the line
+         * @param until  the end index of the line (exclusive)
+         * @param line   the array for the content of the line
+         * @param buffer the output buffer
+         * @return the output buffer, which may have been enlarged
+         */
+        private ByteBuffer transformLine(MappedByteBuffer data, int from, int until, byte[] line,
+                                         ByteBuffer buffer) {
+            int lineLength = until - from;
+            data.position(from);
+            data.get(line, 0, lineLength);
+            ByteBuffer target = LineTransformer.ensureRemaining(buffer, lineLength);
+            LineTransformer.transformLine(line, 0, lineLength, target);
+            return target;
+        }
+    }
+
+    /**
+     * A task writing a buffer into the output file at a given position.
+     * Positional writes on a {@code FileChannel} can be executed
+     * concurrently.
+     */
+    private static class WriteTask extends RecursiveAction {
+        /**
+         * The channel for the output file.
+         */
+        private final FileChannel out;
+
+        /**
+         * The buffer with the data to be written.
+         */
+        private final ByteBuffer data;
+
+        /**
+         * The position in the output file.
+         */
+        private final long position;
+
+        WriteTask(FileChannel out, ByteBuffer data, long position) {
+            this.out = out;
+            this.data = data;
+            this.position = position;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                long offset = position;
+                while (data.hasRemaining()) {
+                    offset += out.write(data, offset);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import io.vertx.core.Handler;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * <p>
+ * A class that limits the number of requests a verticle processes
+ * concurrently.
+ * </p>
+ * <p>
+ * An instance is registered as message handler on the event bus and wraps the
+ * actual handler of a verticle. Messages are passed to the wrapped handler as
+ * long as the number of requests in flight is below a limit (configuration
+ * property {@value #CONFIG_MAX_IN_FLIGHT}). Further messages are put in a
+ * wait queue of limited capacity (configuration property
+ * {@value #CONFIG_MAX_QUEUED}). If this queue is full, too, messages are
+ * rejected immediately with an <em>overloaded</em> {@link ProcessingResult}.
+ * This result contains a hint after how many milliseconds the request should
+ * be retried; it is derived from the mean latency of the requests, but is at
+ * least the value of the configuration property {@value #CONFIG_RETRY_AFTER}.
+ * </p>
+ * <p>
+ * The verticle has to call {@link #requestCompleted()} for each request when
+ * it is done; then the next message in the queue is processed. The numbers of
+ * queued and rejected messages and the time spent in the queue are recorded
+ * in the metrics of the verticle's address.
+ * </p>
+ * <p>
+ * Instances are not thread-safe; they are used by a single verticle instance
+ * on its event loop. So the limits apply per verticle instance.
+ * </p>
+ */
+public class AdmissionControl implements Handler<Message<Object>> {
+    /**
+     * Configuration property for the maximum number of requests in flight.
+     */
+    public static final String CONFIG_MAX_IN_FLIGHT = "maxInFlight";
+
+    /**
+     * Configuration property for the capacity of the wait queue.
+     */
+    public static final String CONFIG_MAX_QUEUED = "maxQueued";
+
+    /**
+     * Configuration property for the minimum retry hint in milliseconds.
+     */
+    public static final String CONFIG_RETRY_AFTER = "retryAfter";
+
+    /**
+     * The default maximum number of requests in flight.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    /**
+     * The default capacity of the wait queue.
+     */
+    public static final int DEFAULT_MAX_QUEUED = 256;
+
+    /**
+     * The default minimum retry hint.
+     */
+    public static final long DEFAULT_RETRY_AFTER = 100;
+
+    /**
+     * The number of nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /**
+     * The queue with waiting messages and their arrival times.
+     */
+    private final Deque<QueuedMessage> queue = new ArrayDeque<>();
+
+    /**
+     * The handler processing messages.
+     */
+    private final Handler<Message<Object>> handler;
+
+    /**
+     * The metrics of the verticle.
+     */
+    private final FileMetrics.AddressMetrics metrics;
+
+    /**
+     * The maximum number of requests in flight.
+     */
+    private final int maxInFlight;
+
+    /**
+     * The capacity of the wait queue.
+     */
+    private final int maxQueued;
+
+    /**
+     * The minimum retry hint.
+     */
+    private final long retryAfter;
+
+    /**
+     * The number of requests in flight.
+     */
+    private int inFlight;
+
+    /**
+     * Creates a new instance of {@code AdmissionControl}.
+     *
+     * @param handler     the handler processing messages
+     * @param metrics     the metrics of the verticle
+     * @param maxInFlight the maximum number of requests in flight
+     * @param maxQueued   the capacity of the wait queue
+     * @param retryAfter  the minimum retry hint in milliseconds
+     */
+    public AdmissionControl(Handler<Message<Object>> handler,
+                            FileMetrics.AddressMetrics metrics, int maxInFlight,
+                            int maxQueued, long retryAfter) {
+        this.handler = handler;
+        this.metrics = metrics;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Creates a new instance of {@code AdmissionControl} with limits obtained
+     * from the given verticle configuration.
+     *
+     * @param config  the configuration
+     * @param handler the handler processing messages
+     * @param metrics the metrics of the verticle
+     * @return the new instance
+     */
+    public static AdmissionControl create(JsonObject config, Handler<Message<Object>> handler,
+                                          FileMetrics.AddressMetrics metrics) {
+        return new AdmissionControl(handler, metrics,
+                config.getInteger(CONFIG_MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT),
+                config.getInteger(CONFIG_MAX_QUEUED, DEFAULT_MAX_QUEUED),
+                config.getLong(CONFIG_RETRY_AFTER, DEFAULT_RETRY_AFTER));
+    }
+
+    @Override
+    public void handle(Message<Object> msg) {
+        if (inFlight < maxInFlight) {
+            inFlight++;
+            handler.handle(msg);
+        } else if (queue.size() < maxQueued) {
+            queue.addLast(new QueuedMessage(msg, System.nanoTime()));
+            metrics.requestQueued();
+        } else {
+            metrics.requestRejected();
+            msg.reply(ProcessingResult.overloaded(retryHint()));
+        }
+    }
+
+    /**
+     * Notifies this object that a request has been completed. If messages
+     * are waiting, the next one is processed.
+     */
+    public void requestCompleted() {
+        QueuedMessage next = queue.pollFirst();
+        if (next == null) {
+            inFlight--;
+        } else {
+            metrics.requestDequeued(next.arrivalTime);
+            handler.handle(next.message);
+        }
+    }
+
+    /**
+     * Returns the number of messages in the wait queue.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Calculates the retry hint for a rejected message. This is the
+     * estimated time until the requests in flight and in the queue are
+     * processed.
+     *
+     * @return the retry hint in milliseconds
+     */
+    private long retryHint() {
+        double meanLatency = metrics.getMeanDuration(FileMetrics.STAGE_TOTAL);
+        long estimate = (long) Math.ceil(meanLatency * (maxQueued + maxInFlight)
+                / maxInFlight / NANOS_PER_MILLI);
+        return Math.max(retryAfter, estimate);
+    }
+
+    /**
+     * A class representing a message in the wait queue.
+     */
+    private static class QueuedMessage {
+        /**
+         * The message.
+         */
+        private final Message<Object> message;
+
+        /**
+         * The time when the message was queued in nanoseconds.
+         */
+        private final long arrivalTime;
+
+        /**
+         * Creates a new instance of {@code QueuedMessage}.
+         *
+         * @param message     the message
+         * @param arrivalTime the arrival time
+         */
+        QueuedMessage(Message<Object> message, long arrivalTime) {
+            this.message = message;
+            this.arrivalTime = arrivalTime;
+        }
+    }
+}
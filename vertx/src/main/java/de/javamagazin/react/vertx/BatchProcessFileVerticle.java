@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * <p>
+ * A verticle that processes a batch of files with a single request.
+ * </p>
+ * <p>
+ * This class listens on the message bus for messages containing a JSON array
+ * with the paths of the files to be processed (either as {@code JsonArray}
+ * or as string). The single files are passed to a processing verticle
+ * (by default {@link ProcessFileVerticleFuture}); if multiple instances of
+ * this verticle are deployed, the files are processed on multiple event
+ * loops. The number of files processed concurrently is limited; it can be
+ * configured via the {@value #CONFIG_MAX_CONCURRENT} property, which must be
+ * positive; otherwise, the deployment of the verticle fails. As large
+ * files can take a while, the requests for single files use a send timeout
+ * (property {@value #CONFIG_SEND_TIMEOUT}) which is much longer than the
+ * default timeout of the event bus.
+ * </p>
+ * <p>
+ * When all files have been processed, the caller gets a single response with
+ * an aggregated result: a JSON object with an overall success flag and the
+ * {@link ProcessingResult}s of the single files. The duration of batches is
+ * recorded in the shared {@link FileMetrics} registry.
+ * </p>
+ */
+public class BatchProcessFileVerticle extends AbstractVerticle {
+    /**
+     * Event bus address this verticle listens on.
+     */
+    public static final String ADDR_PROCESS_BATCH = "react.file.process.batch";
+
+    /**
+     * Configuration property for the number of files processed concurrently.
+     */
+    public static final String CONFIG_MAX_CONCURRENT = "maxConcurrent";
+
+    /**
+     * Configuration property for the address of the processing verticle.
+     */
+    public static final String CONFIG_TARGET = "target";
+
+    /**
+     * Configuration property for the send timeout in milliseconds of the
+     * requests for single files.
+     */
+    public static final String CONFIG_SEND_TIMEOUT = "sendTimeout";
+
+    /**
+     * The default send timeout for single files (10 minutes).
+     */
+    public static final long DEFAULT_SEND_TIMEOUT = 10 * 60 * 1000;
+
+    /**
+     * The logger.
+     */
+    private static Logger LOG = LoggerFactory.getLogger(BatchProcessFileVerticle.class);
+
+    /**
+     * The address the single files are sent to.
+     */
+    private String target;
+
+    /**
+     * The maximum number of files processed concurrently for a batch.
+     */
+    private int maxConcurrent;
+
+    /**
+     * The options for the requests for single files.
+     */
+    private DeliveryOptions deliveryOptions;
+
+    /**
+     * The metrics for the address of this verticle.
+     */
+    private FileMetrics.AddressMetrics metrics;
+
+    @Override
+    public void start(Future<Void> startFuture) throws Exception {
+        target = config().getString(CONFIG_TARGET, ProcessFileVerticleFuture.ADDR_PROCESS_FILE);
+        maxConcurrent = config().getInteger(CONFIG_MAX_CONCURRENT,
+                Runtime.getRuntime().availableProcessors());
+        if (maxConcurrent <= 0) {
+            startFuture.fail(new IllegalArgumentException(CONFIG_MAX_CONCURRENT
+                    + " must be positive: " + maxConcurrent));
+            return;
+        }
+        deliveryOptions = new DeliveryOptions()
+                .setSendTimeout(config().getLong(CONFIG_SEND_TIMEOUT, DEFAULT_SEND_TIMEOUT));
+        metrics = FileMetrics.getShared(vertx).forAddress(ADDR_PROCESS_BATCH);
+        LOG.info("Starting BatchProcessFileVerticle, target = " + target
+                + ", maxConcurrent = " + maxConcurrent);
+        vertx.eventBus().consumer(ADDR_PROCESS_BATCH, this::processBatch);
+        startFuture.complete();
+    }
+
+    private void processBatch(Message<Object> msg) {
+        long startTime = metrics.requestStarted();
+        JsonArray paths;
+        try {
+            paths = (msg.body() instanceof JsonArray) ? (JsonArray) msg.body() :
+                    new JsonArray(String.valueOf(msg.body()));
+        } catch (DecodeException e) {
+            metrics.requestCompleted(startTime, false);
+            sendResponse(msg, false, "Invalid batch: " + e.getMessage(), new JsonArray());
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Processing batch of " + paths.size() + " files");
+        }
+
+        BatchContext context = new BatchContext(msg, paths, startTime);
+        if (paths.isEmpty()) {
+            sendResult(context);
+        } else {
+            int lanes = Math.min(maxConcurrent, paths.size());
+            for (int i = 0; i < lanes; i++) {
+                processNext(context);
+            }
+        }
+    }
+
+    /**
+     * Sends the next file of a batch to the processing verticle. When the
+     * response arrives, the next file is processed; so each invocation of
+     * this method forms a lane that handles one file at a time.
+     *
+     * @param context the context of the batch
+     */
+    private void processNext(BatchContext context) {
+        if (context.nextIndex < context.paths.size()) {
+            int index = context.nextIndex++;
+            String path = String.valueOf(context.paths.getValue(index));
+            vertx.eventBus().send(target, path, deliveryOptions, reply -> {
+                context.results[index] = createFileResult(path, reply);
+                if (++context.completed == context.paths.size()) {
+                    sendResult(context);
+                } else {
+                    processNext(context);
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates the result object for a single file from the response of the
+     * processing verticle.
+     *
+     * @param path  the path of the file
+     * @param reply the response
+     * @return the result for this file
+     */
+    private static JsonObject createFileResult(String path, AsyncResult<Message<Object>> reply) {
+        ProcessingResult result = reply.succeeded() ? (ProcessingResult) reply.result().body() :
+                ProcessingResult.failure("Request failed: " + reply.cause(), 0);
+        return result.toJson().put("path", path);
+    }
+
+    /**
+     * Sends the aggregated result of a batch to the caller.
+     *
+     * @param context the context of the batch
+     */
+    private void sendResult(BatchContext context) {
+        JsonArray files = new JsonArray();
+        int succeeded = 0;
+        for (JsonObject result : context.results) {
+            files.add(result);
+            if (result.getBoolean("result", false)) {
+                succeeded++;
+            }
+        }
+        int total = context.results.length;
+        metrics.requestCompleted(context.startTime, succeeded == total);
+        sendResponse(context.msg, succeeded == total,
+                "Processed " + succeeded + " of " + total + " files successfully", files);
+    }
+
+    /**
+     * Sends a response message to a caller. A JSON object based on the given
+     * parameters is passed to the message.
+     *
+     * @param msg     the message to be answered
+     * @param success the success flag
+     * @param txt     the status text
+     * @param files   the results of the single files
+     */
+    private void sendResponse(Message<?> msg, boolean success, String txt, JsonArray files) {
+        JsonObject result = new JsonObject()
+                .put("result", success)
+                .put("message", txt)
+                .put("files", files);
+        msg.reply(result);
+    }
+
+    /**
+     * Internal data class storing the state of a batch. As it is only
+     * accessed on the event loop of this verticle, no synchronization is
+     * needed.
+     */
+    private static class BatchContext {
+        /**
+         * The message with the batch request.
+         */
+        private final Message<?> msg;
+
+        /**
+         * The paths of the files to be processed.
+         */
+        private final JsonArray paths;
+
+        /**
+         * The results of the single files.
+         */
+        private final JsonObject[] results;
+
+        /**
+         * The start time of the batch.
+         */
+        private final long startTime;
+
+        /**
+         * The index of the next file to be processed.
+         */
+        private int nextIndex;
+
+        /**
+         * The number of files whose processing is complete.
+         */
+        private int completed;
+
+        public BatchContext(Message<?> m, JsonArray p, long start) {
+            msg = m;
+            paths = p;
+            results = new JsonObject[p.size()];
+            startTime = start;
+        }
+    }
+}
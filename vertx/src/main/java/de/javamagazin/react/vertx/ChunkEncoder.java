@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import java.util.Base64;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * <p>
+ * An encoder that transforms binary data chunk-wise.
+ * </p>
+ * <p>
+ * This class is used to encode files in a streaming fashion. The single
+ * chunks of the file are passed to the {@link #encode(Buffer)} method; the
+ * encoded data is returned. After the last chunk, {@link #finish()} has to
+ * be called to obtain data that may still be pending. Instances are
+ * stateful; so a new one has to be obtained for each file.
+ * </p>
+ */
+public abstract class ChunkEncoder {
+    /**
+     * Table with the characters used for hex encoding.
+     */
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+
+    /**
+     * Returns a new encoder that produces Base64.
+     *
+     * @return the Base64 encoder
+     */
+    public static ChunkEncoder base64() {
+        return new Base64ChunkEncoder();
+    }
+
+    /**
+     * Returns a new encoder that produces (uppercase) hex digits.
+     *
+     * @return the hex encoder
+     */
+    public static ChunkEncoder hex() {
+        return new ChunkEncoder() {
+            @Override
+            public Buffer encode(Buffer chunk) {
+                byte[] encoded = new byte[chunk.length() * 2];
+                for (int i = 0; i < chunk.length(); i++) {
+                    int b = chunk.getByte(i) & 0xFF;
+                    encoded[2 * i] = HEX_DIGITS[b >>> 4];
+                    encoded[2 * i + 1] = HEX_DIGITS[b & 0x0F];
+                }
+                return Buffer.buffer(encoded);
+            }
+        };
+    }
+
+    /**
+     * Encodes a chunk of data.
+     *
+     * @param chunk the chunk to be encoded
+     * @return the encoded data (may be empty)
+     */
+    public abstract Buffer encode(Buffer chunk);
+
+    /**
+     * Returns the encoded data that is still pending after the last chunk.
+     * This base implementation returns an empty buffer.
+     *
+     * @return the remaining encoded data
+     */
+    public Buffer finish() {
+        return Buffer.buffer();
+    }
+
+    /**
+     * The Base64 encoder implementation. Base64 encodes groups of 3 bytes;
+     * so bytes at the end of a chunk which do not form a complete group are
+     * carried over to the next chunk. Only the final group is padded.
+     */
+    private static class Base64ChunkEncoder extends ChunkEncoder {
+        /**
+         * The size of a group of bytes encoded together.
+         */
+        private static final int GROUP_SIZE = 3;
+
+        /**
+         * The encoder.
+         */
+        private final Base64.Encoder encoder = Base64.getEncoder();
+
+        /**
+         * Stores the bytes of an incomplete group.
+         */
+        private final byte[] remainder = new byte[GROUP_SIZE];
+
+        /**
+         * The number of bytes in the remainder.
+         */
+        private int remainderLength;
+
+        @Override
+        public Buffer encode(Buffer chunk) {
+            int total = remainderLength + chunk.length();
+            int aligned = total - total % GROUP_SIZE;
+            byte[] data = new byte[aligned];
+            System.arraycopy(remainder, 0, data, 0, Math.min(remainderLength, aligned));
+            int chunkBytes = aligned - remainderLength;
+            if (chunkBytes >= 0) {
+                chunk.getBytes(0, chunkBytes, data, remainderLength);
+                remainderLength = 0;
+            } else {
+                chunkBytes = 0;
+            }
+            for (int i = chunkBytes; i < chunk.length(); i++) {
+                remainder[remainderLength++] = chunk.getByte(i);
+            }
+            return Buffer.buffer(encoder.encode(data));
+        }
+
+        @Override
+        public Buffer finish() {
+            byte[] data = new byte[remainderLength];
+            System.arraycopy(remainder, 0, data, 0, remainderLength);
+            remainderLength = 0;
+            return Buffer.buffer(encoder.encode(data));
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * <p>
+ * A verticle that distributes file processing requests over the nodes of a
+ * Vert.x cluster.
+ * </p>
+ * <p>
+ * One instance of this verticle is deployed on each cluster node. It
+ * periodically publishes the status of its node on the event bus: a unique
+ * address under which the node accepts requests, the root directories of the
+ * storage owned by the node (configuration property
+ * {@value #CONFIG_STORAGE}), and the current load (the number of requests in
+ * flight as recorded by {@link FileMetrics}). From the status messages of
+ * the other nodes, each instance builds a table of the cluster.
+ * </p>
+ * <p>
+ * Requests sent to {@value #ADDR_PROCESS_CLUSTER} are routed based on this
+ * table: if the path to be processed is located below the storage of one or
+ * more nodes, the request goes to the least loaded of them, so that the file
+ * is read from a local disk. Otherwise, the least loaded node of the whole
+ * cluster is selected. The node passes the request to its local
+ * {@link ProcessFileVerticleFuture}, and the response is relayed to the
+ * caller. Nodes that did not publish a status for a while are considered to
+ * have left the cluster. Both hops use a send timeout (configuration property
+ * {@value #CONFIG_SEND_TIMEOUT}) that is long enough for large files.
+ * </p>
+ */
+public class ClusterRoutingVerticle extends AbstractVerticle {
+    /**
+     * Event bus address for requests to be routed in the cluster.
+     */
+    public static final String ADDR_PROCESS_CLUSTER = "react.file.process.cluster";
+
+    /**
+     * Event bus address on which the status of the nodes is published.
+     */
+    public static final String ADDR_NODE_STATUS = "react.cluster.status";
+
+    /**
+     * Configuration property for the storage roots owned by this node. The
+     * value is a JSON array with paths.
+     */
+    public static final String CONFIG_STORAGE = "storage";
+
+    /**
+     * Configuration property for the interval (in milliseconds) in which the
+     * node status is published.
+     */
+    public static final String CONFIG_STATUS_INTERVAL = "statusInterval";
+
+    /**
+     * Configuration property for the send timeout in milliseconds of the
+     * requests forwarded to other nodes and to the processing verticle.
+     */
+    public static final String CONFIG_SEND_TIMEOUT = "sendTimeout";
+
+    /**
+     * The default status interval.
+     */
+    public static final long DEFAULT_STATUS_INTERVAL = 1000;
+
+    /**
+     * Prefix for the addresses of the single nodes.
+     */
+    private static final String ADDR_NODE_PREFIX = "react.cluster.node.";
+
+    /**
+     * Status key for the address of a node.
+     */
+    private static final String KEY_ADDRESS = "address";
+
+    /**
+     * Status key for the storage roots of a node.
+     */
+    private static final String KEY_STORAGE = "storage";
+
+    /**
+     * Status key for the load of a node.
+     */
+    private static final String KEY_LOAD = "load";
+
+    /**
+     * The number of status intervals after which a node without a status
+     * update is removed.
+     */
+    private static final int EXPIRY_INTERVALS = 3;
+
+    /**
+     * The logger.
+     */
+    private static Logger LOG = LoggerFactory.getLogger(ClusterRoutingVerticle.class);
+
+    /**
+     * A table with the known nodes of the cluster. Keys are node addresses.
+     */
+    private final Map<String, NodeStatus> nodes = new HashMap<>();
+
+    /**
+     * The address of this node.
+     */
+    private String nodeAddress;
+
+    /**
+     * The storage roots of this node.
+     */
+    private JsonArray storage;
+
+    /**
+     * The status interval.
+     */
+    private long statusInterval;
+
+    /**
+     * The metrics used to determine the load of this node.
+     */
+    private FileMetrics metrics;
+
+    /**
+     * The options for forwarding requests.
+     */
+    private DeliveryOptions deliveryOptions;
+
+    @Override
+    public void start(Future<Void> startFuture) throws Exception {
+        nodeAddress = ADDR_NODE_PREFIX + UUID.randomUUID();
+        storage = new JsonArray();
+        config().getJsonArray(CONFIG_STORAGE, new JsonArray())
+                .forEach(root -> storage.add(normalize(String.valueOf(root)).toString()));
+        statusInterval = config().getLong(CONFIG_STATUS_INTERVAL, DEFAULT_STATUS_INTERVAL);
+        metrics = FileMetrics.getShared(vertx);
+        deliveryOptions = new DeliveryOptions().setSendTimeout(config().getLong(
+                CONFIG_SEND_TIMEOUT, BatchProcessFileVerticle.DEFAULT_SEND_TIMEOUT));
+        ProcessingResultCodec.register(vertx);
+        LOG.info("Starting ClusterRoutingVerticle at " + nodeAddress + ", storage = "
+                + storage);
+
+        vertx.eventBus().consumer(ADDR_NODE_STATUS, this::updateNodeStatus);
+        vertx.eventBus().consumer(nodeAddress, this::processLocal);
+        vertx.eventBus().consumer(ADDR_PROCESS_CLUSTER, this::route);
+        publishStatus();
+        vertx.setPeriodic(statusInterval, id -> publishStatus());
+        startFuture.complete();
+    }
+
+    /**
+     * Publishes the status of this node to all nodes in the cluster.
+     */
+    private void publishStatus() {
+        vertx.eventBus().publish(ADDR_NODE_STATUS, new JsonObject()
+                .put(KEY_ADDRESS, nodeAddress)
+                .put(KEY_STORAGE, storage)
+                .put(KEY_LOAD, metrics.getInFlight()));
+    }
+
+    /**
+     * Handles a status message of a node and updates the table of nodes.
+     *
+     * @param msg the status message
+     */
+    private void updateNodeStatus(Message<JsonObject> msg) {
+        JsonObject status = msg.body();
+        String address = status.getString(KEY_ADDRESS);
+        List<Path> roots = new ArrayList<>();
+        status.getJsonArray(KEY_STORAGE).forEach(root -> roots.add(Paths.get((String) root)));
+        if (!nodes.containsKey(address)) {
+            LOG.info("Node joined: " + address + ", storage = " + roots);
+        }
+        nodes.put(address, new NodeStatus(address, roots, status.getLong(KEY_LOAD),
+                System.currentTimeMillis()));
+    }
+
+    /**
+     * Processes a request that has been routed to this node. It is passed to
+     * the local processing verticle, and the response is relayed.
+     *
+     * @param msg the message
+     */
+    private void processLocal(Message<Object> msg) {
+        vertx.eventBus().send(ProcessFileVerticleFuture.ADDR_PROCESS_FILE_LOCAL, msg.body(),
+                deliveryOptions, reply -> relay(msg,
+                        reply.succeeded() ? reply.result().body() : null, reply.cause()));
+    }
+
+    /**
+     * Routes a processing request to the node that is best suited to handle
+     * it.
+     *
+     * @param msg the message
+     */
+    private void route(Message<Object> msg) {
+        String path = String.valueOf(msg.body());
+        NodeStatus node = selectNode(normalize(path));
+        if (node == null) {
+            relay(msg, null, new IllegalStateException("No processing node available"));
+        } else {
+            node.load++;
+            vertx.eventBus().send(node.address, path, deliveryOptions,
+                    reply -> relay(msg, reply.succeeded() ? reply.result().body() : null,
+                            reply.cause()));
+        }
+    }
+
+    /**
+     * Selects the node to process the given path. Nodes owning the path are
+     * preferred; within a group of candidates, the node with the lowest load
+     * wins. Nodes whose status has expired are removed.
+     *
+     * @param path the path to be processed
+     * @return the selected node or <strong>null</strong> if no node is known
+     */
+    private NodeStatus selectNode(Path path) {
+        long expiry = System.currentTimeMillis() - EXPIRY_INTERVALS * statusInterval;
+        NodeStatus owner = null;
+        NodeStatus leastLoaded = null;
+        for (Iterator<NodeStatus> it = nodes.values().iterator(); it.hasNext(); ) {
+            NodeStatus node = it.next();
+            if (node.updated < expiry) {
+                LOG.info("Node left: " + node.address);
+                it.remove();
+            } else {
+                if (node.owns(path) && (owner == null || node.load < owner.load)) {
+                    owner = node;
+                }
+                if (leastLoaded == null || node.load < leastLoaded.load) {
+                    leastLoaded = node;
+                }
+            }
+        }
+        return (owner != null) ? owner : leastLoaded;
+    }
+
+    /**
+     * Sends the response of a routed request to the caller. If the request
+     * failed, a failure response is generated.
+     *
+     * @param msg   the message to be answered
+     * @param body  the body of the response
+     * @param cause the exception if the request failed
+     */
+    private static void relay(Message<?> msg, Object body, Throwable cause) {
+        if (cause == null) {
+            msg.reply(body);
+        } else {
+            msg.reply(ProcessingResult.failure("Routing failed: " + cause, 0));
+        }
+    }
+
+    /**
+     * Returns the absolute and normalized form of a path, so that paths can be
+     * compared with storage roots.
+     *
+     * @param path the path
+     * @return the normalized path
+     */
+    private static Path normalize(String path) {
+        return Paths.get(path).toAbsolutePath().normalize();
+    }
+
+    /**
+     * A class holding the status of a single node in the cluster.
+     */
+    private static class NodeStatus {
+        /**
+         * The address of the node.
+         */
+        private final String address;
+
+        /**
+         * The storage roots owned by the node.
+         */
+        private final List<Path> storage;
+
+        /**
+         * The time when this status was received.
+         */
+        private final long updated;
+
+        /**
+         * The load of the node. This is increased for each request routed to
+         * the node until the next status update arrives.
+         */
+        private long load;
+
+        /**
+         * Creates a new instance of {@code NodeStatus}.
+         *
+         * @param address the address of the node
+         * @param storage the storage roots
+         * @param load    the load of the node
+         * @param updated the time of the update
+         */
+        NodeStatus(String address, List<Path> storage, long load, long updated) {
+            this.address = address;
+            this.storage = storage;
+            this.load = load;
+            this.updated = updated;
+        }
+
+        /**
+         * Checks whether the given path belongs to the storage of this node.
+         *
+         * @param path the path
+         * @return a flag whether this node owns the path
+         */
+        boolean owns(Path path) {
+            return storage.stream().anyMatch(path::startsWith);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.hazelcast.config.ClasspathXmlConfig;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.config.NetworkConfig;
+import com.hazelcast.config.TcpIpConfig;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+
+/**
+ * <p>
+ * Main class starting up Vertx in clustered mode.
+ * </p>
+ * <p>
+ * The cluster is formed by multiple JVMs on the local machine; the cluster
+ * manager is configured to use the loopback interface only. Each node
+ * deploys the same verticles as {@link VertxStartup} plus a
+ * {@link ClusterRoutingVerticle} which distributes requests over the nodes.
+ * Command line arguments are the port of the Vertx shell (which has to be
+ * different for each node), the number of instances per verticle, and a
+ * comma-separated list of the storage roots owned by this node.
+ * </p>
+ */
+public class ClusteredVertxStartup {
+    /**
+     * The host all cluster communication is bound to.
+     */
+    private static final String CLUSTER_HOST = "127.0.0.1";
+
+    /**
+     * The name of the cluster group. Only nodes with this group name join
+     * the cluster.
+     */
+    private static final String CLUSTER_GROUP = "react-file";
+
+    /**
+     * The first port of the cluster manager.
+     */
+    private static final int CLUSTER_PORT = 5701;
+
+    /**
+     * The maximum number of nodes on the local machine. The cluster manager
+     * probes this number of ports when looking for other nodes.
+     */
+    private static final int MAX_NODES = 8;
+
+    /**
+     * The timeout for joining the cluster (in seconds).
+     */
+    private static final int JOIN_TIMEOUT = 60;
+
+    public static void main(String[] args) throws InterruptedException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 4000;
+        int instances = (args.length > 1) ? Integer.parseInt(args[1]) :
+                Runtime.getRuntime().availableProcessors();
+        JsonArray storage = new JsonArray();
+        if (args.length > 2) {
+            for (String root : args[2].split(",")) {
+                storage.add(root);
+            }
+        }
+
+        System.out.println("Joining cluster.");
+        BlockingQueue<AsyncResult<Vertx>> queue = new ArrayBlockingQueue<>(1);
+        Vertx.clusteredVertx(new VertxOptions()
+                .setClusterManager(createClusterManager())
+                .setClusterHost(CLUSTER_HOST), queue::offer);
+        AsyncResult<Vertx> clusterResult = queue.poll(JOIN_TIMEOUT, TimeUnit.SECONDS);
+        if (clusterResult == null) {
+            System.out.println("Timeout on joining the cluster!");
+            System.exit(1);
+        } else if (clusterResult.failed()) {
+            clusterResult.cause().printStackTrace();
+            System.out.println("Could not join the cluster!");
+            System.exit(1);
+        }
+
+        Vertx vertx = clusterResult.result();
+        Future<String> routing = VertxStartup.deployVerticle(vertx, ClusterRoutingVerticle.class,
+                new DeploymentOptions().setConfig(new JsonObject()
+                        .put(ClusterRoutingVerticle.CONFIG_STORAGE, storage)));
+        VertxStartup.startup(vertx, port, instances, Collections.singletonList(routing));
+    }
+
+    /**
+     * Creates the cluster manager. The default Hazelcast configuration of
+     * Vertx is adapted to find other nodes via TCP on the local machine
+     * rather than via multicast.
+     *
+     * @return the cluster manager
+     */
+    private static ClusterManager createClusterManager() {
+        Config config = new ClasspathXmlConfig("default-cluster.xml");
+        config.getGroupConfig().setName(CLUSTER_GROUP);
+        NetworkConfig network = config.getNetworkConfig();
+        network.setPort(CLUSTER_PORT).setPortAutoIncrement(true);
+        network.getInterfaces().setEnabled(true).addInterface(CLUSTER_HOST);
+        JoinConfig join = network.getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        TcpIpConfig tcpIp = join.getTcpIpConfig().setEnabled(true);
+        for (int i = 0; i < MAX_NODES; i++) {
+            tcpIp.addMember(CLUSTER_HOST + ":" + (CLUSTER_PORT + i));
+        }
+        return new HazelcastClusterManager(config);
+    }
+}
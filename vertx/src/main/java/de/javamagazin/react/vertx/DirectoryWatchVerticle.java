@@ -0,0 +1,502 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * <p>
+ * A verticle that watches directories and processes new or changed files.
+ * </p>
+ * <p>
+ * The directories listed in the configuration property
+ * {@value #CONFIG_DIRECTORIES} are scanned periodically (the interval can be
+ * configured via {@value #CONFIG_SCAN_INTERVAL}). The size and modification
+ * time of each file are compared with an index of the files processed so
+ * far. This index is persisted in the file specified by
+ * {@value #CONFIG_INDEX}; so after a restart only the files are processed
+ * that have changed in the meantime.
+ * </p>
+ * <p>
+ * A file is only processed if it has not changed between two scans. Thus a
+ * burst of modifications of a file (e.g. while it is copied) results in a
+ * single request after the file has settled. Files to be processed are
+ * added to a work queue with a limited capacity ({@value #CONFIG_MAX_QUEUED});
+ * changes that do not fit into the queue are detected again by a later scan.
+ * From this queue, the files are sent to a processing verticle (by default
+ * {@link ProcessFileVerticleFuture}, configurable via
+ * {@value #CONFIG_TARGET}) with at most {@value #CONFIG_MAX_CONCURRENT}
+ * requests in flight. The output file of a changed file is deleted before;
+ * output files themselves are ignored. Processing large files can take a
+ * while; therefore, the send timeout of these requests
+ * ({@value #CONFIG_SEND_TIMEOUT}) is much longer than the default timeout of
+ * the event bus.
+ * </p>
+ * <p>
+ * A file is recorded in the index when its processing is complete, even if
+ * it failed; so it is not processed again until it changes. Requests that
+ * were rejected because of overload are repeated after the next scan.
+ * </p>
+ * <p>
+ * Only a single instance of this verticle should be deployed for a set of
+ * directories.
+ * </p>
+ */
+public class DirectoryWatchVerticle extends AbstractVerticle {
+    /**
+     * Configuration property for the directories to be watched. The value is
+     * a JSON array with paths.
+     */
+    public static final String CONFIG_DIRECTORIES = "directories";
+
+    /**
+     * Configuration property for the scan interval in milliseconds.
+     */
+    public static final String CONFIG_SCAN_INTERVAL = "scanInterval";
+
+    /**
+     * Configuration property for the path of the index file.
+     */
+    public static final String CONFIG_INDEX = "index";
+
+    /**
+     * Configuration property for the capacity of the work queue.
+     */
+    public static final String CONFIG_MAX_QUEUED = "maxQueued";
+
+    /**
+     * Configuration property for the number of files processed concurrently.
+     */
+    public static final String CONFIG_MAX_CONCURRENT = "maxConcurrent";
+
+    /**
+     * Configuration property for the address of the processing verticle.
+     */
+    public static final String CONFIG_TARGET = "target";
+
+    /**
+     * Configuration property for the send timeout in milliseconds of the
+     * requests to the processing verticle.
+     */
+    public static final String CONFIG_SEND_TIMEOUT = "sendTimeout";
+
+    /**
+     * The default scan interval.
+     */
+    public static final long DEFAULT_SCAN_INTERVAL = 2000;
+
+    /**
+     * The default path of the index file.
+     */
+    public static final String DEFAULT_INDEX = "react-watch-index.json";
+
+    /**
+     * The default capacity of the work queue.
+     */
+    public static final int DEFAULT_MAX_QUEUED = 1024;
+
+    /**
+     * The default send timeout (10 minutes).
+     */
+    public static final long DEFAULT_SEND_TIMEOUT = 10 * 60 * 1000;
+
+    /**
+     * Index key for the size of a file.
+     */
+    private static final String KEY_SIZE = "size";
+
+    /**
+     * Index key for the modification time of a file.
+     */
+    private static final String KEY_MODIFIED = "modified";
+
+    /**
+     * The logger.
+     */
+    private static Logger LOG = LoggerFactory.getLogger(DirectoryWatchVerticle.class);
+
+    /**
+     * The states of the files that have been processed. Keys are paths.
+     */
+    private final Map<String, FileState> index = new HashMap<>();
+
+    /**
+     * The states of the files found by the last scan.
+     */
+    private Map<String, FileState> lastScan = new HashMap<>();
+
+    /**
+     * The queue with files waiting to be processed.
+     */
+    private final Deque<WorkItem> queue = new ArrayDeque<>();
+
+    /**
+     * The paths of the files that are queued or in flight.
+     */
+    private final Set<String> pending = new HashSet<>();
+
+    /**
+     * The directories to be watched.
+     */
+    private List<Path> directories;
+
+    /**
+     * The path of the index file.
+     */
+    private String indexPath;
+
+    /**
+     * The address the files are sent to.
+     */
+    private String target;
+
+    /**
+     * The scan interval.
+     */
+    private long scanInterval;
+
+    /**
+     * The capacity of the work queue.
+     */
+    private int maxQueued;
+
+    /**
+     * The maximum number of files in flight.
+     */
+    private int maxConcurrent;
+
+    /**
+     * The options for the requests to the processing verticle.
+     */
+    private DeliveryOptions deliveryOptions;
+
+    /**
+     * The number of files in flight.
+     */
+    private int inFlight;
+
+    /**
+     * Flag whether the index has changed since it was written.
+     */
+    private boolean indexDirty;
+
+    @Override
+    public void start(Future<Void> startFuture) throws Exception {
+        directories = config().getJsonArray(CONFIG_DIRECTORIES, new JsonArray()).stream()
+                .map(dir -> Paths.get(String.valueOf(dir)).toAbsolutePath().normalize())
+                .collect(Collectors.toList());
+        indexPath = config().getString(CONFIG_INDEX, DEFAULT_INDEX);
+        target = config().getString(CONFIG_TARGET, ProcessFileVerticleFuture.ADDR_PROCESS_FILE);
+        scanInterval = config().getLong(CONFIG_SCAN_INTERVAL, DEFAULT_SCAN_INTERVAL);
+        maxQueued = config().getInteger(CONFIG_MAX_QUEUED, DEFAULT_MAX_QUEUED);
+        maxConcurrent = config().getInteger(CONFIG_MAX_CONCURRENT,
+                Runtime.getRuntime().availableProcessors());
+        deliveryOptions = new DeliveryOptions()
+                .setSendTimeout(config().getLong(CONFIG_SEND_TIMEOUT, DEFAULT_SEND_TIMEOUT));
+        ProcessingResultCodec.register(vertx);
+        LOG.info("Starting DirectoryWatchVerticle, directories = " + directories
+                + ", index = " + indexPath);
+
+        loadIndex(res -> {
+            if (res.failed()) {
+                startFuture.fail(res.cause());
+            } else {
+                scan();
+                startFuture.complete();
+            }
+        });
+    }
+
+    @Override
+    public void stop(Future<Void> stopFuture) throws Exception {
+        saveIndex(stopFuture);
+    }
+
+    /**
+     * Loads the index file if it exists.
+     *
+     * @param handler the handler to be notified when the index is loaded
+     */
+    private void loadIndex(Handler<AsyncResult<Void>> handler) {
+        vertx.fileSystem().readFile(indexPath, res -> {
+            if (res.succeeded()) {
+                try {
+                    JsonObject json = res.result().toJsonObject();
+                    for (String path : json.fieldNames()) {
+                        JsonObject state = json.getJsonObject(path);
+                        index.put(path, new FileState(state.getLong(KEY_SIZE),
+                                state.getLong(KEY_MODIFIED)));
+                    }
+                    LOG.info("Loaded index with " + index.size() + " files.");
+                    handler.handle(Future.succeededFuture());
+                } catch (DecodeException | ClassCastException e) {
+                    handler.handle(Future.failedFuture(e));
+                }
+            } else {
+                vertx.fileSystem().exists(indexPath, rEx -> handler.handle(
+                        rEx.succeeded() && !rEx.result() ? Future.succeededFuture() :
+                                Future.failedFuture(res.cause())));
+            }
+        });
+    }
+
+    /**
+     * Writes the index file if the index has been changed.
+     *
+     * @param handler the handler to be notified when the index is written
+     */
+    private void saveIndex(Handler<AsyncResult<Void>> handler) {
+        if (!indexDirty) {
+            handler.handle(Future.succeededFuture());
+        } else {
+            JsonObject json = new JsonObject();
+            index.forEach((path, state) -> json.put(path, new JsonObject()
+                    .put(KEY_SIZE, state.size)
+                    .put(KEY_MODIFIED, state.modified)));
+            indexDirty = false;
+            vertx.fileSystem().writeFile(indexPath, Buffer.buffer(json.encode()), res -> {
+                if (res.failed()) {
+                    LOG.error("Could not write index " + indexPath, res.cause());
+                    indexDirty = true;
+                }
+                handler.handle(res);
+            });
+        }
+    }
+
+    /**
+     * Scans the watched directories on a worker thread and schedules the next
+     * scan when the result has been processed.
+     */
+    private void scan() {
+        vertx.<Map<String, FileState>>executeBlocking(f -> f.complete(scanDirectories()), false,
+                res -> {
+                    if (res.succeeded()) {
+                        processScanResult(res.result());
+                    } else {
+                        LOG.error("Scan failed!", res.cause());
+                    }
+                    saveIndex(rSave -> vertx.setTimer(scanInterval, id -> scan()));
+                });
+    }
+
+    /**
+     * Determines the states of the regular files in the watched directories.
+     * Output files and the index file are skipped. This method is blocking.
+     *
+     * @return a map with the states of the files found
+     */
+    private Map<String, FileState> scanDirectories() {
+        Path indexFile = Paths.get(indexPath).toAbsolutePath().normalize();
+        Map<String, FileState> states = new HashMap<>();
+        for (Path dir : directories) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path file : stream) {
+                    if (!file.toString().endsWith(ProcessFileVerticleCB.OUTPUT_SUFFIX)
+                            && !file.equals(indexFile)) {
+                        BasicFileAttributes attrs =
+                                Files.readAttributes(file, BasicFileAttributes.class);
+                        if (attrs.isRegularFile()) {
+                            states.put(file.toString(), new FileState(attrs.size(),
+                                    attrs.lastModifiedTime().toMillis()));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("Could not scan directory " + dir, e);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Compares the result of a scan with the previous scan and the index. New
+     * or changed files that did not change since the previous scan are added
+     * to the work queue. Files that have been removed are removed from the
+     * index.
+     *
+     * @param states the states of the files found by the scan
+     */
+    private void processScanResult(Map<String, FileState> states) {
+        int queued = 0;
+        for (Map.Entry<String, FileState> e : states.entrySet()) {
+            String path = e.getKey();
+            FileState state = e.getValue();
+            if (state.equals(lastScan.get(path)) && !state.equals(index.get(path))
+                    && !pending.contains(path) && queue.size() < maxQueued) {
+                queue.addLast(new WorkItem(path, state, index.containsKey(path)));
+                pending.add(path);
+                queued++;
+            }
+        }
+        lastScan = states;
+
+        for (Iterator<String> it = index.keySet().iterator(); it.hasNext(); ) {
+            if (!states.containsKey(it.next())) {
+                it.remove();
+                indexDirty = true;
+            }
+        }
+        if (queued > 0) {
+            LOG.info("Queued " + queued + " new or changed files.");
+        }
+        processQueue();
+    }
+
+    /**
+     * Sends files from the work queue to the processing verticle as long as
+     * the limit for requests in flight is not reached.
+     */
+    private void processQueue() {
+        while (inFlight < maxConcurrent && !queue.isEmpty()) {
+            WorkItem item = queue.pollFirst();
+            inFlight++;
+            if (item.changed) {
+                vertx.fileSystem().delete(item.path + ProcessFileVerticleCB.OUTPUT_SUFFIX,
+                        res -> processFile(item));
+            } else {
+                processFile(item);
+            }
+        }
+    }
+
+    /**
+     * Sends a file to the processing verticle and handles the response.
+     *
+     * @param item the item to be processed
+     */
+    private void processFile(WorkItem item) {
+        vertx.eventBus().send(target, item.path, deliveryOptions, reply -> {
+            inFlight--;
+            pending.remove(item.path);
+            if (reply.failed()) {
+                LOG.error("Request for " + item.path + " failed!", reply.cause());
+            } else {
+                ProcessingResult result = (ProcessingResult) reply.result().body();
+                if (!result.isOverloaded()) {
+                    index.put(item.path, item.state);
+                    indexDirty = true;
+                    if (!result.isSuccess()) {
+                        LOG.warn("Processing of " + item.path + " failed: "
+                                + result.getMessage());
+                    }
+                }
+            }
+            processQueue();
+        });
+    }
+
+    /**
+     * A class describing the state of a file: its size and modification
+     * time.
+     */
+    private static class FileState {
+        /**
+         * The size of the file.
+         */
+        private final long size;
+
+        /**
+         * The time of the last modification.
+         */
+        private final long modified;
+
+        /**
+         * Creates a new instance of {@code FileState}.
+         *
+         * @param size     the size
+         * @param modified the modification time
+         */
+        FileState(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileState)) {
+                return false;
+            }
+            FileState other = (FileState) obj;
+            return size == other.size && modified == other.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, modified);
+        }
+    }
+
+    /**
+     * A class representing a file in the work queue.
+     */
+    private static class WorkItem {
+        /**
+         * The path of the file.
+         */
+        private final String path;
+
+        /**
+         * The state of the file when it was queued.
+         */
+        private final FileState state;
+
+        /**
+         * Flag whether the file has been processed before.
+         */
+        private final boolean changed;
+
+        /**
+         * Creates a new instance of {@code WorkItem}.
+         *
+         * @param path    the path
+         * @param state   the state of the file
+         * @param changed the changed flag
+         */
+        WorkItem(String path, FileState state, boolean changed) {
+            this.path = path;
+            this.state = state;
+            this.changed = changed;
+        }
+    }
+}
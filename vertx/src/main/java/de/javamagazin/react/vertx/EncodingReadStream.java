@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.streams.Pump;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * <p>
+ * A {@code ReadStream} implementation that encodes the data of another
+ * stream using a {@link ChunkEncoder}.
+ * </p>
+ * <p>
+ * Flow control is delegated to the wrapped stream. When the wrapped stream
+ * ends, the data still pending in the encoder is emitted before the end
+ * handler is called.
+ * </p>
+ * <p>
+ * The {@link #pipe(Vertx, AsyncFile, AsyncFile, String, ChunkEncoder, Handler)}
+ * method uses this class to encode one file into another one with constant
+ * memory: the data is pumped chunk by chunk, and reading is paused while the
+ * write queue of the target file is full. The stream counts the bytes read
+ * from the wrapped stream and the encoded bytes it has emitted; so these
+ * statistics are available when the operation is complete.
+ * </p>
+ */
+public class EncodingReadStream implements ReadStream<Buffer> {
+    /**
+     * The size of the chunks read from input files. This is a multiple of 3,
+     * so that Base64 encoding does not have to carry over bytes.
+     */
+    public static final int READ_BUFFER_SIZE = 3 * 16384;
+
+    /**
+     * The wrapped stream.
+     */
+    private final ReadStream<Buffer> source;
+
+    /**
+     * The encoder.
+     */
+    private final ChunkEncoder encoder;
+
+    /**
+     * The handler for data.
+     */
+    private Handler<Buffer> dataHandler;
+
+    /**
+     * The handler for the end of the stream.
+     */
+    private Handler<Void> endHandler;
+
+    /**
+     * The number of bytes read from the wrapped stream.
+     */
+    private long bytesRead;
+
+    /**
+     * The number of encoded bytes emitted.
+     */
+    private long bytesEncoded;
+
+    /**
+     * Creates a new instance of {@code EncodingReadStream}.
+     *
+     * @param source  the stream with the data to be encoded
+     * @param encoder the encoder
+     */
+    public EncodingReadStream(ReadStream<Buffer> source, ChunkEncoder encoder) {
+        this.source = source;
+        this.encoder = encoder;
+        source.endHandler(v -> handleEnd());
+    }
+
+    /**
+     * Pumps the content of an input file to an output file using the given
+     * encoder. Both files are closed when the operation is done. The
+     * handler is called with the result; it is called after the output file
+     * has been closed (so all data has been written) or when a failure
+     * occurs. In case of success, the result is the encoding stream which
+     * can be queried for statistics. In case of a failure, the incomplete
+     * output file is deleted, so that the operation can be repeated.
+     *
+     * @param vertx   the {@code Vertx} instance
+     * @param in      the input file
+     * @param out     the output file
+     * @param outPath the path of the output file
+     * @param encoder the encoder
+     * @param handler the handler for the result
+     */
+    public static void pipe(Vertx vertx, AsyncFile in, AsyncFile out, String outPath,
+                            ChunkEncoder encoder,
+                            Handler<AsyncResult<EncodingReadStream>> handler) {
+        in.setReadBufferSize(READ_BUFFER_SIZE);
+        EncodingReadStream encoded = new EncodingReadStream(in, encoder);
+        Pump pump = Pump.pump(encoded, out);
+        Future<EncodingReadStream> result = Future.future();
+        result.setHandler(handler);
+
+        AtomicBoolean done = new AtomicBoolean();
+        Handler<Throwable> errorHandler = ex -> {
+            if (done.compareAndSet(false, true)) {
+                pump.stop();
+                in.close();
+                out.close(rClose -> deleteAndFail(vertx, outPath, ex, result));
+            }
+        };
+        encoded.exceptionHandler(errorHandler);
+        out.exceptionHandler(errorHandler);
+        encoded.endHandler(v -> {
+            if (done.compareAndSet(false, true)) {
+                in.close();
+                out.close(res -> {
+                    if (res.failed()) {
+                        deleteAndFail(vertx, outPath, res.cause(), result);
+                    } else {
+                        result.complete(encoded);
+                    }
+                });
+            }
+        });
+        pump.start();
+    }
+
+    /**
+     * Deletes an incomplete output file and then fails the result of a pipe
+     * operation. The original cause is reported even if the file cannot be
+     * deleted.
+     *
+     * @param vertx   the {@code Vertx} instance
+     * @param outPath the path of the output file
+     * @param cause   the cause of the failure
+     * @param result  the result of the pipe operation
+     */
+    private static void deleteAndFail(Vertx vertx, String outPath, Throwable cause,
+                                      Future<EncodingReadStream> result) {
+        vertx.fileSystem().delete(outPath, res -> result.fail(cause));
+    }
+
+    /**
+     * Returns the number of bytes read from the wrapped stream so far.
+     *
+     * @return the number of bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the number of encoded bytes emitted by this stream so far.
+     *
+     * @return the number of encoded bytes
+     */
+    public long getBytesEncoded() {
+        return bytesEncoded;
+    }
+
+    @Override
+    public EncodingReadStream exceptionHandler(Handler<Throwable> handler) {
+        source.exceptionHandler(handler);
+        return this;
+    }
+
+    @Override
+    public EncodingReadStream handler(Handler<Buffer> handler) {
+        dataHandler = handler;
+        if (handler == null) {
+            source.handler(null);
+        } else {
+            source.handler(chunk -> {
+                bytesRead += chunk.length();
+                emit(encoder.encode(chunk));
+            });
+        }
+        return this;
+    }
+
+    @Override
+    public EncodingReadStream pause() {
+        source.pause();
+        return this;
+    }
+
+    @Override
+    public EncodingReadStream resume() {
+        source.resume();
+        return this;
+    }
+
+    @Override
+    public EncodingReadStream endHandler(Handler<Void> handler) {
+        endHandler = handler;
+        return this;
+    }
+
+    /**
+     * Passes encoded data to the data handler. Empty buffers are skipped.
+     *
+     * @param data the encoded data
+     */
+    private void emit(Buffer data) {
+        if (data.length() > 0 && dataHandler != null) {
+            bytesEncoded += data.length();
+            dataHandler.handle(data);
+        }
+    }
+
+    /**
+     * Handles the end of the wrapped stream. The data pending in the encoder
+     * is emitted, then the end handler is invoked.
+     */
+    private void handleEnd() {
+        emit(encoder.finish());
+        if (endHandler != null) {
+            endHandler.handle(null);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.FileProps;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * <p>
+ * A cache for the content of files that is shared by all verticles of a
+ * {@code Vertx} instance.
+ * </p>
+ * <p>
+ * Entries are keyed by the path of the file and validated against its
+ * modification time and size; so if a file is changed, it is read again. The
+ * total size of the cached content is limited; if it is exceeded, the least
+ * recently used entries are evicted. Files larger than the limit are not
+ * cached at all.
+ * </p>
+ * <p>
+ * If a file is requested while it is already being read, no additional read
+ * operation is started; rather, the caller is notified when the pending
+ * operation completes. Results are always delivered on the context of the
+ * caller.
+ * </p>
+ * <p>
+ * As the cache is accessed from multiple event loops, it is thread-safe. The
+ * shared instance is stored in a local map of the {@code Vertx} instance and
+ * can be obtained via {@link #getShared(Vertx, long)}.
+ * </p>
+ */
+public class FileCache implements Shareable {
+    /**
+     * Configuration property for the maximum size of the cache in bytes.
+     */
+    public static final String CONFIG_CACHE_SIZE = "cacheSize";
+
+    /**
+     * The default maximum size of the cache in bytes.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The name of the local map storing the shared instance.
+     */
+    private static final String MAP_NAME = "react.file.cache";
+
+    /**
+     * The key under which the shared instance is stored.
+     */
+    private static final String KEY_CACHE = "cache";
+
+    /**
+     * The cached entries in access order.
+     */
+    private final LinkedHashMap<String, CacheEntry> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Stores the read operations in progress.
+     */
+    private final Map<CacheKey, List<Handler<AsyncResult<Buffer>>>> pendingReads =
+            new HashMap<>();
+
+    /**
+     * The maximum size of the cached content.
+     */
+    private final long maxSize;
+
+    /**
+     * The current size of the cached content.
+     */
+    private long size;
+
+    /**
+     * Creates a new instance of {@code FileCache}.
+     *
+     * @param maxSize the maximum size of the cached content in bytes
+     */
+    public FileCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cache instance shared by all verticles of the given
+     * {@code Vertx} instance. It is created on first access; in this case,
+     * the maximum size is used.
+     *
+     * @param vertx   the {@code Vertx} instance
+     * @param maxSize the maximum size of the cache in bytes
+     * @return the shared cache
+     */
+    public static FileCache getShared(Vertx vertx, long maxSize) {
+        LocalMap<String, FileCache> map = vertx.sharedData().getLocalMap(MAP_NAME);
+        FileCache cache = new FileCache(maxSize);
+        FileCache existing = map.putIfAbsent(KEY_CACHE, cache);
+        return (existing != null) ? existing : cache;
+    }
+
+    /**
+     * Returns the content of a file, either from the cache or by reading it.
+     *
+     * @param vertx   the {@code Vertx} instance
+     * @param path    the path of the file
+     * @param handler the handler for the result
+     */
+    public void readFile(Vertx vertx, String path, Handler<AsyncResult<Buffer>> handler) {
+        Context context = vertx.getOrCreateContext();
+        vertx.fileSystem().props(path, res -> {
+            if (res.failed()) {
+                handler.handle(Future.failedFuture(res.cause()));
+            } else {
+                readFile(vertx, new CacheKey(path, res.result()), result ->
+                        context.runOnContext(v -> handler.handle(result)));
+            }
+        });
+    }
+
+    /**
+     * Returns the current size of the cached content in bytes.
+     *
+     * @return the size of the cache
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the content of a file with the given properties. If the file
+     * is neither cached nor being read, a read operation is started.
+     *
+     * @param vertx   the {@code Vertx} instance
+     * @param key     the key of the file
+     * @param handler the handler for the result
+     */
+    private void readFile(Vertx vertx, CacheKey key, Handler<AsyncResult<Buffer>> handler) {
+        boolean startRead = false;
+        Buffer content = null;
+        synchronized (this) {
+            CacheEntry entry = entries.get(key.path);
+            if (entry != null && entry.key.equals(key)) {
+                content = entry.content;
+            } else {
+                if (entry != null) {
+                    remove(key.path);
+                }
+                List<Handler<AsyncResult<Buffer>>> waiting = pendingReads.get(key);
+                if (waiting == null) {
+                    waiting = new ArrayList<>();
+                    pendingReads.put(key, waiting);
+                    startRead = true;
+                }
+                waiting.add(handler);
+            }
+        }
+
+        if (content != null) {
+            handler.handle(Future.succeededFuture(content.slice()));
+        } else if (startRead) {
+            vertx.fileSystem().readFile(key.path, res -> readCompleted(key, res));
+        }
+    }
+
+    /**
+     * Handles the result of a read operation. If it was successful, the
+     * content is added to the cache. All waiting handlers are notified.
+     *
+     * @param key    the key of the file
+     * @param result the result of the read operation
+     */
+    private void readCompleted(CacheKey key, AsyncResult<Buffer> result) {
+        List<Handler<AsyncResult<Buffer>>> waiting;
+        synchronized (this) {
+            waiting = pendingReads.remove(key);
+            if (result.succeeded() && result.result().length() <= maxSize) {
+                put(key, result.result());
+            }
+        }
+
+        for (Handler<AsyncResult<Buffer>> handler : waiting) {
+            handler.handle(result.succeeded() ?
+                    Future.succeededFuture(result.result().slice()) : result);
+        }
+    }
+
+    /**
+     * Adds an entry to the cache and evicts the least recently used entries
+     * if the maximum size is exceeded. Caller must hold the lock.
+     *
+     * @param key     the key of the file
+     * @param content the content of the file
+     */
+    private void put(CacheKey key, Buffer content) {
+        remove(key.path);
+        entries.put(key.path, new CacheEntry(key, content));
+        size += content.length();
+
+        Iterator<CacheEntry> it = entries.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            size -= it.next().content.length();
+            it.remove();
+        }
+    }
+
+    /**
+     * Removes the entry for the given path from the cache. Caller must hold
+     * the lock.
+     *
+     * @param path the path
+     */
+    private void remove(String path) {
+        CacheEntry entry = entries.remove(path);
+        if (entry != null) {
+            size -= entry.content.length();
+        }
+    }
+
+    /**
+     * Internal data class identifying a specific version of a file.
+     */
+    private static class CacheKey {
+        /**
+         * The path of the file.
+         */
+        private final String path;
+
+        /**
+         * The last modification time of the file.
+         */
+        private final long lastModified;
+
+        /**
+         * The size of the file.
+         */
+        private final long fileSize;
+
+        public CacheKey(String path, FileProps props) {
+            this.path = path;
+            lastModified = props.lastModifiedTime();
+            fileSize = props.size();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return path.equals(other.path) && lastModified == other.lastModified
+                    && fileSize == other.fileSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * path.hashCode() + Long.hashCode(lastModified))
+                    + Long.hashCode(fileSize);
+        }
+    }
+
+    /**
+     * Internal data class for an entry of the cache.
+     */
+    private static class CacheEntry {
+        /**
+         * The key of the cached file.
+         */
+        private final CacheKey key;
+
+        /**
+         * The content of the file.
+         */
+        private final Buffer content;
+
+        public CacheEntry(CacheKey key, Buffer content) {
+            this.key = key;
+            this.content = content;
+        }
+    }
+}
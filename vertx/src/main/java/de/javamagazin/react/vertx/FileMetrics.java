@@ -0,0 +1,400 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * <p>
+ * A registry for metrics about the file operations of the demo verticles.
+ * </p>
+ * <p>
+ * Metrics are collected per event bus address. For each address, there are
+ * counters for the requests in flight, completed and failed requests, the
+ * requests waiting in the queue of {@link AdmissionControl} and the rejected
+ * ones, and the bytes read and written. In addition, the durations of the single
+ * processing stages (e.g. the exists check, reading, encoding, writing) are
+ * recorded in nanosecond histograms, so that percentiles can be reported.
+ * </p>
+ * <p>
+ * The registry is thread-safe. An instance shared by all verticles of a
+ * {@code Vertx} instance is stored in a local map and can be obtained via
+ * {@link #getShared(Vertx)}. The {@link #report()} method generates a
+ * textual overview which is displayed by the <em>file-metrics</em> shell
+ * command.
+ * </p>
+ */
+public class FileMetrics implements Shareable {
+    /**
+     * Stage for checking whether a file exists.
+     */
+    public static final String STAGE_EXISTS = "exists";
+
+    /**
+     * Stage for opening files.
+     */
+    public static final String STAGE_OPEN = "open";
+
+    /**
+     * Stage for reading a file.
+     */
+    public static final String STAGE_READ = "read";
+
+    /**
+     * Stage for encoding the content of a file.
+     */
+    public static final String STAGE_ENCODE = "encode";
+
+    /**
+     * Stage for writing a file.
+     */
+    public static final String STAGE_WRITE = "write";
+
+    /**
+     * Stage for streaming a file (reading, encoding and writing combined).
+     */
+    public static final String STAGE_STREAM = "stream";
+
+    /**
+     * Stage for waiting in the queue of {@link AdmissionControl}.
+     */
+    public static final String STAGE_QUEUE = "queue";
+
+    /**
+     * Stage for the whole request.
+     */
+    public static final String STAGE_TOTAL = "total";
+
+    /**
+     * The name of the local map storing the shared instance.
+     */
+    private static final String MAP_NAME = "react.file.metrics";
+
+    /**
+     * The key under which the shared instance is stored.
+     */
+    private static final String KEY_METRICS = "metrics";
+
+    /**
+     * The number of significant digits of the histograms.
+     */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    /**
+     * The percentiles listed in the report.
+     */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * Stores the metrics for the single addresses.
+     */
+    private final ConcurrentMap<String, AddressMetrics> addressMetrics =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Returns the metrics registry shared by all verticles of the given
+     * {@code Vertx} instance.
+     *
+     * @param vertx the {@code Vertx} instance
+     * @return the shared registry
+     */
+    public static FileMetrics getShared(Vertx vertx) {
+        LocalMap<String, FileMetrics> map = vertx.sharedData().getLocalMap(MAP_NAME);
+        FileMetrics metrics = new FileMetrics();
+        FileMetrics existing = map.putIfAbsent(KEY_METRICS, metrics);
+        return (existing != null) ? existing : metrics;
+    }
+
+    /**
+     * Returns the metrics for the given event bus address. They are created
+     * on first access.
+     *
+     * @param address the address
+     * @return the metrics for this address
+     */
+    public AddressMetrics forAddress(String address) {
+        return addressMetrics.computeIfAbsent(address, a -> new AddressMetrics());
+    }
+
+    /**
+     * Returns the total number of requests in flight over all addresses. This
+     * is a measure for the current load of this node.
+     *
+     * @return the number of requests in flight
+     */
+    public long getInFlight() {
+        return addressMetrics.values().stream()
+                .mapToLong(AddressMetrics::getInFlight)
+                .sum();
+    }
+
+    /**
+     * Generates a report about all metrics collected so far. Durations are
+     * reported in microseconds.
+     *
+     * @return the report
+     */
+    public String report() {
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<String, AddressMetrics> e : new TreeMap<>(addressMetrics).entrySet()) {
+            e.getValue().appendReport(e.getKey(), buf);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * A class collecting the metrics for a single event bus address.
+     */
+    public static class AddressMetrics {
+        /**
+         * The histograms for the single stages.
+         */
+        private final ConcurrentMap<String, Histogram> stages = new ConcurrentHashMap<>();
+
+        /**
+         * The number of requests in flight.
+         */
+        private final AtomicLong inFlight = new AtomicLong();
+
+        /**
+         * The number of completed requests.
+         */
+        private final AtomicLong completed = new AtomicLong();
+
+        /**
+         * The number of failed requests.
+         */
+        private final AtomicLong failures = new AtomicLong();
+
+        /**
+         * The number of requests waiting in a queue.
+         */
+        private final AtomicLong queued = new AtomicLong();
+
+        /**
+         * The number of rejected requests.
+         */
+        private final AtomicLong rejected = new AtomicLong();
+
+        /**
+         * The number of bytes read.
+         */
+        private final AtomicLong bytesRead = new AtomicLong();
+
+        /**
+         * The number of bytes written.
+         */
+        private final AtomicLong bytesWritten = new AtomicLong();
+
+        /**
+         * Records the start of a request.
+         *
+         * @return the start time of the request in nanoseconds
+         */
+        public long requestStarted() {
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        /**
+         * Records the end of a request.
+         *
+         * @param startTime the start time as returned by
+         *                  {@link #requestStarted()}
+         * @param success   flag whether the request was successful
+         */
+        public void requestCompleted(long startTime, boolean success) {
+            recordStage(STAGE_TOTAL, startTime);
+            inFlight.decrementAndGet();
+            completed.incrementAndGet();
+            if (!success) {
+                failures.incrementAndGet();
+            }
+        }
+
+        /**
+         * Returns the number of requests currently in flight.
+         *
+         * @return the number of requests in flight
+         */
+        public long getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * Records that a request has been put in a wait queue.
+         */
+        public void requestQueued() {
+            queued.incrementAndGet();
+        }
+
+        /**
+         * Records that a request has been removed from a wait queue in order
+         * to be processed.
+         *
+         * @param queueTime the time when the request was queued in
+         *                  nanoseconds
+         */
+        public void requestDequeued(long queueTime) {
+            queued.decrementAndGet();
+            recordStage(STAGE_QUEUE, queueTime);
+        }
+
+        /**
+         * Records that a request has been rejected because of overload.
+         */
+        public void requestRejected() {
+            rejected.incrementAndGet();
+        }
+
+        /**
+         * Returns the number of requests currently waiting in a queue.
+         *
+         * @return the queue depth
+         */
+        public long getQueued() {
+            return queued.get();
+        }
+
+        /**
+         * Returns the number of requests rejected so far.
+         *
+         * @return the number of rejected requests
+         */
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        /**
+         * Returns the mean duration of a stage in nanoseconds. Result is 0 if
+         * no duration has been recorded for this stage.
+         *
+         * @param stage the name of the stage
+         * @return the mean duration of this stage
+         */
+        public double getMeanDuration(String stage) {
+            Histogram histogram = stages.get(stage);
+            return (histogram != null) ? histogram.getMean() : 0;
+        }
+
+        /**
+         * Records the duration of a stage.
+         *
+         * @param stage     the name of the stage
+         * @param startTime the start time of the stage in nanoseconds
+         */
+        public void recordStage(String stage, long startTime) {
+            stages.computeIfAbsent(stage, s -> new ConcurrentHistogram(SIGNIFICANT_DIGITS))
+                    .recordValue(Math.max(0, System.nanoTime() - startTime));
+        }
+
+        /**
+         * Returns a handler that records the duration of a stage when it is
+         * invoked and then delegates to the given handler.
+         *
+         * @param stage    the name of the stage
+         * @param delegate the handler for the result of the stage
+         * @param <T>      the type of the result
+         * @return the timing handler
+         */
+        public <T> Handler<AsyncResult<T>> timed(String stage, Handler<AsyncResult<T>> delegate) {
+            long startTime = System.nanoTime();
+            return res -> {
+                recordStage(stage, startTime);
+                delegate.handle(res);
+            };
+        }
+
+        /**
+         * Adds a number of bytes read.
+         *
+         * @param count the number of bytes
+         */
+        public void addBytesRead(long count) {
+            bytesRead.addAndGet(count);
+        }
+
+        /**
+         * Adds a number of bytes written.
+         *
+         * @param count the number of bytes
+         */
+        public void addBytesWritten(long count) {
+            bytesWritten.addAndGet(count);
+        }
+
+        /**
+         * Appends a report about these metrics to the given buffer.
+         *
+         * @param address the address
+         * @param buf     the target buffer
+         */
+        private void appendReport(String address, StringBuilder buf) {
+            buf.append(address).append('\n')
+                    .append(String.format("  in flight: %d, completed: %d, failed: %d%n",
+                            inFlight.get(), completed.get(), failures.get()))
+                    .append(String.format("  queued: %d, rejected: %d%n",
+                            queued.get(), rejected.get()))
+                    .append(String.format("  bytes read: %d, bytes written: %d%n",
+                            bytesRead.get(), bytesWritten.get()));
+            for (Map.Entry<String, Histogram> e : new TreeMap<>(stages).entrySet()) {
+                Histogram histogram = e.getValue().copy();
+                buf.append(String.format("  %-8s count: %d, mean: %.1f", e.getKey(),
+                        histogram.getTotalCount(), toMicros(histogram.getMean())));
+                for (double percentile : PERCENTILES) {
+                    buf.append(String.format(", p%s: %.1f", formatPercentile(percentile),
+                            toMicros(histogram.getValueAtPercentile(percentile))));
+                }
+                buf.append(String.format(", max: %.1f (us)%n", toMicros(histogram.getMaxValue())));
+            }
+        }
+
+        /**
+         * Returns a string representation of a percentile. Integral values
+         * are output without decimal places.
+         *
+         * @param percentile the percentile
+         * @return the string for this percentile
+         */
+        private static String formatPercentile(double percentile) {
+            return (percentile == Math.rint(percentile)) ?
+                    String.valueOf((long) percentile) : String.valueOf(percentile);
+        }
+
+        /**
+         * Converts a duration in nanoseconds to microseconds.
+         *
+         * @param nanos the duration in nanoseconds
+         * @return the duration in microseconds
+         */
+        private static double toMicros(double nanos) {
+            return nanos / TimeUnit.MICROSECONDS.toNanos(1);
+        }
+    }
+}
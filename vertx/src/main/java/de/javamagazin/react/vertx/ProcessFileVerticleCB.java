@@ -21,7 +21,7 @@ import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.Message;
-import io.vertx.core.json.JsonObject;
+import io.vertx.core.file.OpenOptions;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
@@ -31,9 +31,26 @@ import io.vertx.core.logging.LoggerFactory;
  * </p>
  * <p>
  * This class listens on the message bus for requests to process a file. The
- * specified file is read in a block, base-64 encoded, and stored in an output
- * path. (If the output file already exists, the operation fails.) The caller
- * then gets a response with the status of the operation.
+ * specified file is base-64 encoded and stored in an output path. (If the
+ * output file already exists, the operation fails.) The caller then gets a
+ * {@link ProcessingResult} with the status of the operation.
+ * </p>
+ * <p>
+ * By default, the file is processed in a streaming fashion: it is read
+ * chunk-wise, and the encoded chunks are pumped into the output file, so that
+ * memory consumption does not depend on the file size. By setting the
+ * configuration property {@value #CONFIG_STREAMING} to <strong>false</strong>,
+ * the file is read in a single block, encoded, and written in a single block.
+ * In this mode, the file is read via the shared {@link FileCache}.
+ * </p>
+ * <p>
+ * The durations of the single processing stages and further statistics are
+ * recorded in the shared {@link FileMetrics} registry.
+ * </p>
+ * <p>
+ * The number of files processed concurrently is limited by
+ * {@link AdmissionControl}; if too many requests arrive, an
+ * <em>overloaded</em> response is sent.
  * </p>
  * <p>
  * This example shows the nesting of multiple callbacks.
@@ -45,62 +62,174 @@ public class ProcessFileVerticleCB extends AbstractVerticle {
      */
     public static final String ADDR_PROCESS_FILE = "react.file.process";
 
+    /**
+     * Configuration property to enable or disable streaming mode.
+     */
+    public static final String CONFIG_STREAMING = "streaming";
+
+    /**
+     * The suffix appended to the path of a file to obtain the path of the
+     * output file.
+     */
+    public static final String OUTPUT_SUFFIX = ".processed";
+
     /**
      * The logger.
      */
     private static Logger LOG = LoggerFactory.getLogger(ProcessFileVerticleCB.class);
 
+    /**
+     * Flag whether files are processed in streaming mode.
+     */
+    private boolean streaming;
+
+    /**
+     * The cache for file contents.
+     */
+    private FileCache cache;
+
+    /**
+     * The metrics for the address of this verticle.
+     */
+    private FileMetrics.AddressMetrics metrics;
+
+    /**
+     * The object limiting the number of concurrent requests.
+     */
+    private AdmissionControl admission;
+
     @Override
     public void start(Future<Void> startFuture) throws Exception {
-        LOG.info("Starting ProcessFileVerticleCB");
-        vertx.eventBus().consumer(ADDR_PROCESS_FILE, this::processFile);
+        streaming = config().getBoolean(CONFIG_STREAMING, true);
+        cache = FileCache.getShared(vertx,
+                config().getLong(FileCache.CONFIG_CACHE_SIZE, FileCache.DEFAULT_CACHE_SIZE));
+        metrics = FileMetrics.getShared(vertx).forAddress(ADDR_PROCESS_FILE);
+        ProcessingResultCodec.register(vertx);
+        LOG.info("Starting ProcessFileVerticleCB, streaming = " + streaming);
+        admission = AdmissionControl.create(config(), this::processFile, metrics);
+        vertx.eventBus().consumer(ADDR_PROCESS_FILE, admission);
         startFuture.complete();
     }
 
     private void processFile(Message<Object> msg) {
+        long startTime = metrics.requestStarted();
         String path = String.valueOf(msg.body());
-        LOG.info("Processing file " + path);
-        String outPath = path + ".processed";
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Processing file " + path);
+        }
+        String outPath = path + OUTPUT_SUFFIX;
 
-        vertx.fileSystem().exists(outPath, rEx -> {
+        vertx.fileSystem().exists(outPath, metrics.timed(FileMetrics.STAGE_EXISTS, rEx -> {
             if (rEx.failed()) {
-                sendResponse(msg, false, "Exists check failed");
+                sendResponse(msg, startTime, false, "Exists check failed");
             } else if (rEx.result()) {
-                sendResponse(msg, false, "File already exists");
+                sendResponse(msg, startTime, false, "File already exists");
+            } else if (streaming) {
+                processFileStreamed(msg, startTime, path, outPath);
             } else {
-                vertx.fileSystem().readFile(path, rRead -> {
+                cache.readFile(vertx, path, metrics.timed(FileMetrics.STAGE_READ, rRead -> {
                     if (rRead.failed()) {
-                        sendResponse(msg, false, "Read failed: " + rRead.cause());
+                        sendResponse(msg, startTime, false, "Read failed: " + rRead.cause());
                     } else {
                         byte[] content = rRead.result().getBytes();
-                        String encoded = DatatypeConverter.printBase64Binary(content);
-                        vertx.fileSystem().writeFile(outPath, Buffer.buffer(encoded), rWrt -> {
-                            if (rWrt.succeeded()) {
-                                sendResponse(msg, true, "Generated " + outPath);
+                        metrics.addBytesRead(content.length);
+                        long encodeStart = System.nanoTime();
+                        Buffer encoded = Buffer.buffer(DatatypeConverter.printBase64Binary(content));
+                        metrics.recordStage(FileMetrics.STAGE_ENCODE, encodeStart);
+                        vertx.fileSystem().writeFile(outPath, encoded,
+                                metrics.timed(FileMetrics.STAGE_WRITE, rWrt -> {
+                                    if (rWrt.succeeded()) {
+                                        metrics.addBytesWritten(encoded.length());
+                                        sendResponse(msg, startTime, true, "Generated " + outPath,
+                                                content.length, encoded.length());
+                                    } else {
+                                        sendResponse(msg, startTime, false,
+                                                "Write failed: " + rWrt.cause());
+                                    }
+                                }));
+                    }
+                }));
+            }
+        }));
+    }
+
+    /**
+     * Processes a file in streaming mode. Input and output file are opened,
+     * and then the encoded data is pumped from the one to the other.
+     *
+     * @param msg       the message to be answered
+     * @param startTime the start time of the request
+     * @param path      the path of the input file
+     * @param outPath   the path of the output file
+     */
+    private void processFileStreamed(Message<?> msg, long startTime, String path,
+                                     String outPath) {
+        OpenOptions inOptions = new OpenOptions().setRead(true).setCreate(false);
+        vertx.fileSystem().open(path, inOptions, metrics.timed(FileMetrics.STAGE_OPEN, rIn -> {
+            if (rIn.failed()) {
+                sendResponse(msg, startTime, false, "Read failed: " + rIn.cause());
+            } else {
+                OpenOptions outOptions = new OpenOptions().setWrite(true).setCreateNew(true);
+                vertx.fileSystem().open(outPath, outOptions,
+                        metrics.timed(FileMetrics.STAGE_OPEN, rOut -> {
+                            if (rOut.failed()) {
+                                rIn.result().close();
+                                sendResponse(msg, startTime, false,
+                                        "Write failed: " + rOut.cause());
                             } else {
-                                sendResponse(msg, false, "Write failed: " + rWrt.cause());
+                                EncodingReadStream.pipe(vertx, rIn.result(), rOut.result(),
+                                        outPath, ChunkEncoder.base64(),
+                                        metrics.timed(FileMetrics.STAGE_STREAM, rPipe -> {
+                                            if (rPipe.succeeded()) {
+                                                EncodingReadStream stream = rPipe.result();
+                                                metrics.addBytesRead(stream.getBytesRead());
+                                                metrics.addBytesWritten(stream.getBytesEncoded());
+                                                sendResponse(msg, startTime, true,
+                                                        "Generated " + outPath,
+                                                        stream.getBytesRead(),
+                                                        stream.getBytesEncoded());
+                                            } else {
+                                                sendResponse(msg, startTime, false,
+                                                        "Processing failed: " + rPipe.cause());
+                                            }
+                                        }));
                             }
-                        });
-                    }
-                });
+                        }));
             }
-        });
+        }));
+    }
+
+    /**
+     * Sends a response message to a caller for a request that did not
+     * transfer any data.
+     *
+     * @param msg       the message to be answered
+     * @param startTime the start time of the request
+     * @param success   the success flag
+     * @param txt       the status text
+     */
+    private void sendResponse(Message<?> msg, long startTime, boolean success, String txt) {
+        sendResponse(msg, startTime, success, txt, 0, 0);
     }
 
     /**
-     * Sends a response message to a caller. A JSON result based on the given
-     * parameters is passed to the message.
+     * Sends a response message to a caller. A {@link ProcessingResult} based
+     * on the given parameters is passed to the message. The completion of the
+     * request is recorded in the metrics and reported to admission control.
      *
-     * @param msg     the message to be answered
-     * @param success the success flag
-     * @param txt     the status text
+     * @param msg          the message to be answered
+     * @param startTime    the start time of the request
+     * @param success      the success flag
+     * @param txt          the status text
+     * @param bytesRead    the number of bytes read
+     * @param bytesWritten the number of bytes written
      */
-    private void sendResponse(Message<?> msg, boolean success, String txt) {
-        JsonObject result = new JsonObject()
-                .put("result", success)
-                .put("message", txt);
-        String msgStr = result.encodePrettily();
-        LOG.info("Sending response: " + msgStr);
-        msg.reply(msgStr);
+    private void sendResponse(Message<?> msg, long startTime, boolean success, String txt,
+                              long bytesRead, long bytesWritten) {
+        metrics.requestCompleted(startTime, success);
+        admission.requestCompleted();
+        long duration = System.nanoTime() - startTime;
+        msg.reply(success ? ProcessingResult.success(txt, bytesRead, bytesWritten, duration) :
+                ProcessingResult.failure(txt, duration));
     }
 }
@@ -15,14 +15,18 @@
  */
 package de.javamagazin.react.vertx;
 
-import javax.xml.bind.DatatypeConverter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
+import io.vertx.core.WorkerExecutor;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.Message;
-import io.vertx.core.json.JsonObject;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
@@ -33,7 +37,23 @@ import io.vertx.core.logging.LoggerFactory;
  * <p>
  * This class performs the same operations as {@link ProcessFileVerticleCB},
  * but this time futures are used to chain the steps rather than nested
- * callbacks.
+ * callbacks. The encoding is different: the content of the file is
+ * converted to hex digits.
+ * </p>
+ * <p>
+ * Like the callback-based variant, the verticle processes files in a
+ * streaming fashion by default. This can be disabled via the configuration
+ * property {@value ProcessFileVerticleCB#CONFIG_STREAMING}. In this case,
+ * the file content is split into chunks which are encoded in parallel on a
+ * dedicated worker pool; so the event loop is not blocked by this
+ * CPU-intensive operation. The size of the pool can be configured using the
+ * {@value #CONFIG_ENCODER_THREADS} property; it defaults to the number of
+ * available processors. The file is read via the shared {@link FileCache}.
+ * </p>
+ * <p>
+ * As for {@link ProcessFileVerticleCB}, metrics about the processing stages
+ * are recorded in the shared {@link FileMetrics} registry, and the number
+ * of concurrent requests is limited by {@link AdmissionControl}.
  * </p>
  */
 public class ProcessFileVerticleFuture extends AbstractVerticle {
@@ -42,31 +62,108 @@ public class ProcessFileVerticleFuture extends AbstractVerticle {
      */
     public static final String ADDR_PROCESS_FILE = "react.file.process.future";
 
+    /**
+     * Event bus address this verticle listens on for requests that must be
+     * processed on the local node. Other than {@link #ADDR_PROCESS_FILE},
+     * this address is not propagated to other cluster nodes.
+     */
+    public static final String ADDR_PROCESS_FILE_LOCAL = "react.file.process.future.local";
+
+    /**
+     * Configuration property for the number of threads used for encoding.
+     */
+    public static final String CONFIG_ENCODER_THREADS = "encoderThreads";
+
+    /**
+     * The name of the worker pool for encoding.
+     */
+    private static final String ENCODER_POOL = "react-file-encoder";
+
+    /**
+     * The size of the chunks encoded in parallel. As hex encoding handles
+     * each byte independently, chunks can be split at any position.
+     */
+    private static final int ENCODE_CHUNK_SIZE = 1024 * 1024;
+
     /**
      * The logger.
      */
     private static Logger LOG = LoggerFactory.getLogger(ProcessFileVerticleFuture.class);
 
+    /**
+     * Flag whether files are processed in streaming mode.
+     */
+    private boolean streaming;
+
+    /**
+     * The executor for encoding operations.
+     */
+    private WorkerExecutor encoderExecutor;
+
+    /**
+     * The cache for file contents.
+     */
+    private FileCache cache;
+
+    /**
+     * The metrics for the address of this verticle.
+     */
+    private FileMetrics.AddressMetrics metrics;
+
+    /**
+     * The object limiting the number of concurrent requests.
+     */
+    private AdmissionControl admission;
+
     @Override
     public void start(Future<Void> startFuture) throws Exception {
-        LOG.info("Starting ProcessFileVerticleFuture");
-        vertx.eventBus().consumer(ADDR_PROCESS_FILE, this::processFile);
+        cache = FileCache.getShared(vertx,
+                config().getLong(FileCache.CONFIG_CACHE_SIZE, FileCache.DEFAULT_CACHE_SIZE));
+        streaming = config().getBoolean(ProcessFileVerticleCB.CONFIG_STREAMING, true);
+        encoderExecutor = vertx.createSharedWorkerExecutor(ENCODER_POOL,
+                config().getInteger(CONFIG_ENCODER_THREADS,
+                        Runtime.getRuntime().availableProcessors()));
+        metrics = FileMetrics.getShared(vertx).forAddress(ADDR_PROCESS_FILE);
+        ProcessingResultCodec.register(vertx);
+        LOG.info("Starting ProcessFileVerticleFuture, streaming = " + streaming);
+        admission = AdmissionControl.create(config(), this::processFile, metrics);
+        vertx.eventBus().consumer(ADDR_PROCESS_FILE, admission);
+        vertx.eventBus().localConsumer(ADDR_PROCESS_FILE_LOCAL, admission);
         startFuture.complete();
     }
 
+    @Override
+    public void stop() throws Exception {
+        encoderExecutor.close();
+    }
+
     private void processFile(Message<Object> msg) {
+        long startTime = metrics.requestStarted();
         String path = String.valueOf(msg.body());
-        LOG.info("Processing file " + path);
-        String outPath = path + ".processed";
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Processing file " + path);
+        }
+        String outPath = path + ProcessFileVerticleCB.OUTPUT_SUFFIX;
+        String txtSuccess = "Generated " + outPath;
 
-        existsFile(outPath)
+        Future<Void> checked = existsFile(outPath)
                 .compose(res -> !res ? Future.succeededFuture() :
-                        Future.failedFuture(new IOException("File already exists")))
-                .compose(v -> readFile(path))
-                .map(b -> Buffer.buffer(DatatypeConverter.printHexBinary(b.getBytes())))
-                .compose(buf -> writeFile(outPath, buf))
-                .setHandler(res -> sendResponse(msg, res.succeeded(),
-                        res.succeeded() ? "Generated " + outPath : res.cause().getMessage()));
+                        Future.failedFuture(new IOException("File already exists")));
+        Future<ProcessingResult> processed = streaming ?
+                checked.compose(v -> openFile(path,
+                        new OpenOptions().setRead(true).setCreate(false)))
+                        .compose(in -> encodeToFile(in, outPath))
+                        .map(stream -> ProcessingResult.success(txtSuccess,
+                                stream.getBytesRead(), stream.getBytesEncoded(),
+                                elapsed(startTime))) :
+                checked.compose(v -> readFile(path))
+                        .compose(data -> encodeParallel(data)
+                                .compose(buf -> writeFile(outPath, buf)
+                                        .map(v -> ProcessingResult.success(txtSuccess,
+                                                data.length(), buf.length(),
+                                                elapsed(startTime)))));
+        processed.setHandler(res -> sendResponse(msg, startTime, res.succeeded() ? res.result() :
+                ProcessingResult.failure(String.valueOf(res.cause()), elapsed(startTime))));
     }
 
     /**
@@ -77,22 +174,100 @@ public class ProcessFileVerticleFuture extends AbstractVerticle {
      */
     private Future<Boolean> existsFile(String path) {
         Future<Boolean> result = Future.future();
-        vertx.fileSystem().exists(path, result);
+        vertx.fileSystem().exists(path, metrics.timed(FileMetrics.STAGE_EXISTS, result));
         return result;
     }
 
     /**
-     * Reads a file and returns a Future with the result.
+     * Reads a file (using the cache) and returns a Future with the result.
      *
      * @param path the path of the file
      * @return a Future with the data read from the file
      */
     private Future<Buffer> readFile(String path) {
         Future<Buffer> result = Future.future();
-        vertx.fileSystem().readFile(path, result);
+        cache.readFile(vertx, path, metrics.timed(FileMetrics.STAGE_READ, res -> {
+            if (res.succeeded()) {
+                metrics.addBytesRead(res.result().length());
+            }
+            result.handle(res);
+        }));
         return result;
     }
 
+    /**
+     * Opens a file and returns a Future with the result.
+     *
+     * @param path    the path of the file
+     * @param options the options for opening the file
+     * @return a Future with the opened file
+     */
+    private Future<AsyncFile> openFile(String path, OpenOptions options) {
+        Future<AsyncFile> result = Future.future();
+        vertx.fileSystem().open(path, options, metrics.timed(FileMetrics.STAGE_OPEN, result));
+        return result;
+    }
+
+    /**
+     * Streams the hex-encoded content of an input file into a newly created
+     * output file and returns a Future with the result. If the output file
+     * cannot be created, the input file is closed.
+     *
+     * @param in      the input file
+     * @param outPath the path of the output file
+     * @return a Future with the stream that has been piped
+     */
+    private Future<EncodingReadStream> encodeToFile(AsyncFile in, String outPath) {
+        Future<EncodingReadStream> result = Future.future();
+        openFile(outPath, new OpenOptions().setWrite(true).setCreateNew(true))
+                .setHandler(res -> {
+                    if (res.failed()) {
+                        in.close();
+                        result.fail(res.cause());
+                    } else {
+                        EncodingReadStream.pipe(vertx, in, res.result(), outPath,
+                                ChunkEncoder.hex(),
+                                metrics.timed(FileMetrics.STAGE_STREAM, rPipe -> {
+                                    if (rPipe.succeeded()) {
+                                        metrics.addBytesRead(rPipe.result().getBytesRead());
+                                        metrics.addBytesWritten(rPipe.result().getBytesEncoded());
+                                    }
+                                    result.handle(rPipe);
+                                }));
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * Hex-encodes the given data on the worker pool. The data is split into
+     * chunks that are encoded in parallel. The encoded chunks are then
+     * concatenated in their original order.
+     *
+     * @param data the data to be encoded
+     * @return a Future with the encoded data
+     */
+    private Future<Buffer> encodeParallel(Buffer data) {
+        long startTime = System.nanoTime();
+        List<Future> parts = new ArrayList<>();
+        for (int pos = 0; pos < data.length(); pos += ENCODE_CHUNK_SIZE) {
+            Buffer chunk = data.slice(pos, Math.min(pos + ENCODE_CHUNK_SIZE, data.length()));
+            Future<Buffer> part = Future.future();
+            encoderExecutor.<Buffer>executeBlocking(f -> f.complete(ChunkEncoder.hex().encode(chunk)),
+                    false, part);
+            parts.add(part);
+        }
+
+        return CompositeFuture.all(parts).map(all -> {
+            Buffer result = Buffer.buffer(data.length() * 2);
+            for (int i = 0; i < all.size(); i++) {
+                result.appendBuffer(all.resultAt(i));
+            }
+            metrics.recordStage(FileMetrics.STAGE_ENCODE, startTime);
+            return result;
+        });
+    }
+
     /**
      * Writes data to a file and returns a Future with the result.
      *
@@ -102,24 +277,36 @@ public class ProcessFileVerticleFuture extends AbstractVerticle {
      */
     private Future<Void> writeFile(String outPath, Buffer data) {
         Future<Void> result = Future.future();
-        vertx.fileSystem().writeFile(outPath, data, result);
+        vertx.fileSystem().writeFile(outPath, data, metrics.timed(FileMetrics.STAGE_WRITE, res -> {
+            if (res.succeeded()) {
+                metrics.addBytesWritten(data.length());
+            }
+            result.handle(res);
+        }));
         return result;
     }
 
     /**
-     * Sends a response message to a caller. A JSON result based on the given
-     * parameters is passed to the message.
+     * Sends a response message to a caller. The completion of the request is
+     * recorded in the metrics and reported to admission control.
      *
-     * @param msg     the message to be answered
-     * @param success the success flag
-     * @param txt     the status text
-     */
-    private void sendResponse(Message<?> msg, boolean success, String txt) {
-        JsonObject result = new JsonObject()
-                .put("result", success)
-                .put("message", txt);
-        String msgStr = result.encodePrettily();
-        LOG.info("Sending response: " + msgStr);
-        msg.reply(msgStr);
+     * @param msg       the message to be answered
+     * @param startTime the start time of the request
+     * @param result    the result to be sent
+     */
+    private void sendResponse(Message<?> msg, long startTime, ProcessingResult result) {
+        metrics.requestCompleted(startTime, result.isSuccess());
+        admission.requestCompleted();
+        msg.reply(result);
+    }
+
+    /**
+     * Returns the time that has elapsed since the start of a request.
+     *
+     * @param startTime the start time of the request
+     * @return the duration of the request in nanoseconds
+     */
+    private static long elapsed(long startTime) {
+        return System.nanoTime() - startTime;
     }
 }
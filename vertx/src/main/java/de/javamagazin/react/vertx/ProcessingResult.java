@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * <p>
+ * A class representing the response of a verticle to a file request.
+ * </p>
+ * <p>
+ * An instance contains a success flag, a status message, the numbers of
+ * bytes read and written, and the duration of the request in nanoseconds. If
+ * the request was rejected because the verticle is overloaded, the
+ * {@code overloaded} flag is set, and a hint is available after how many
+ * milliseconds the request should be retried.
+ * </p>
+ * <p>
+ * Instances are immutable. They are sent over the event bus using
+ * {@link ProcessingResultCodec}; so local receivers get the very same object
+ * without any serialization.
+ * </p>
+ */
+public final class ProcessingResult {
+    /**
+     * The success flag.
+     */
+    private final boolean success;
+
+    /**
+     * The overloaded flag.
+     */
+    private final boolean overloaded;
+
+    /**
+     * The status message.
+     */
+    private final String message;
+
+    /**
+     * The number of bytes read.
+     */
+    private final long bytesRead;
+
+    /**
+     * The number of bytes written.
+     */
+    private final long bytesWritten;
+
+    /**
+     * The duration of the request in nanoseconds.
+     */
+    private final long duration;
+
+    /**
+     * The retry hint in milliseconds.
+     */
+    private final long retryAfter;
+
+    /**
+     * Creates a new instance of {@code ProcessingResult}.
+     *
+     * @param success      the success flag
+     * @param overloaded   the overloaded flag
+     * @param message      the status message
+     * @param bytesRead    the number of bytes read
+     * @param bytesWritten the number of bytes written
+     * @param duration     the duration in nanoseconds
+     * @param retryAfter   the retry hint in milliseconds
+     */
+    ProcessingResult(boolean success, boolean overloaded, String message, long bytesRead,
+                     long bytesWritten, long duration, long retryAfter) {
+        this.success = success;
+        this.overloaded = overloaded;
+        this.message = message;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.duration = duration;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Creates a result for a successful request.
+     *
+     * @param message      the status message
+     * @param bytesRead    the number of bytes read
+     * @param bytesWritten the number of bytes written
+     * @param duration     the duration in nanoseconds
+     * @return the result
+     */
+    public static ProcessingResult success(String message, long bytesRead, long bytesWritten,
+                                           long duration) {
+        return new ProcessingResult(true, false, message, bytesRead, bytesWritten, duration, 0);
+    }
+
+    /**
+     * Creates a result for a failed request.
+     *
+     * @param message  the status message
+     * @param duration the duration in nanoseconds
+     * @return the result
+     */
+    public static ProcessingResult failure(String message, long duration) {
+        return new ProcessingResult(false, false, message, 0, 0, duration, 0);
+    }
+
+    /**
+     * Creates a result for a request that was rejected because of overload.
+     *
+     * @param retryAfter the retry hint in milliseconds
+     * @return the result
+     */
+    public static ProcessingResult overloaded(long retryAfter) {
+        return new ProcessingResult(false, true, "Overloaded", 0, 0, 0, retryAfter);
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Returns a JSON representation of this result.
+     *
+     * @return the JSON object
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject()
+                .put("result", success)
+                .put("message", message)
+                .put("bytesRead", bytesRead)
+                .put("bytesWritten", bytesWritten)
+                .put("duration", duration);
+        if (overloaded) {
+            json.put("overloaded", true)
+                    .put("retryAfter", retryAfter);
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().encode();
+    }
+}
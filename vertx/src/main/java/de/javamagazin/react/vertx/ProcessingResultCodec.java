@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Oliver Heger.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.javamagazin.react.vertx;
+
+import java.nio.charset.StandardCharsets;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.shareddata.LocalMap;
+
+/**
+ * <p>
+ * A {@code MessageCodec} for {@link ProcessingResult} objects.
+ * </p>
+ * <p>
+ * As results are immutable, local delivery just passes the original object.
+ * For the cluster, a compact binary format is used: a byte with the flags,
+ * the numeric fields as longs, and the UTF-8 encoded message prefixed by its
+ * length. A <strong>null</strong> message is encoded with a length of -1.
+ * </p>
+ * <p>
+ * The codec is registered as default codec for its class via
+ * {@link #register(Vertx)}; this method can be called by every verticle
+ * which sends results.
+ * </p>
+ */
+public class ProcessingResultCodec implements MessageCodec<ProcessingResult, ProcessingResult> {
+    /**
+     * The name of this codec.
+     */
+    public static final String NAME = "react.processing.result";
+
+    /**
+     * The name of the local map recording the registration of the codec.
+     */
+    private static final String MAP_NAME = "react.codecs";
+
+    /**
+     * Flag for a successful result.
+     */
+    private static final int FLAG_SUCCESS = 1;
+
+    /**
+     * Flag for a result caused by overload.
+     */
+    private static final int FLAG_OVERLOADED = 2;
+
+    /**
+     * The length written for a <strong>null</strong> message.
+     */
+    private static final int NULL_LENGTH = -1;
+
+    /**
+     * Registers this codec as default codec for {@link ProcessingResult} at
+     * the event bus of the given {@code Vertx} instance unless this has
+     * already been done.
+     *
+     * @param vertx the {@code Vertx} instance
+     */
+    public static void register(Vertx vertx) {
+        LocalMap<String, Boolean> map = vertx.sharedData().getLocalMap(MAP_NAME);
+        if (map.putIfAbsent(NAME, Boolean.TRUE) == null) {
+            vertx.eventBus().registerDefaultCodec(ProcessingResult.class,
+                    new ProcessingResultCodec());
+        }
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, ProcessingResult result) {
+        byte[] message = result.getMessage() == null ? null :
+                result.getMessage().getBytes(StandardCharsets.UTF_8);
+        int flags = (result.isSuccess() ? FLAG_SUCCESS : 0)
+                | (result.isOverloaded() ? FLAG_OVERLOADED : 0);
+        buffer.appendByte((byte) flags)
+                .appendLong(result.getBytesRead())
+                .appendLong(result.getBytesWritten())
+                .appendLong(result.getDuration())
+                .appendLong(result.getRetryAfter())
+                .appendInt(message == null ? NULL_LENGTH : message.length);
+        if (message != null) {
+            buffer.appendBytes(message);
+        }
+    }
+
+    @Override
+    public ProcessingResult decodeFromWire(int pos, Buffer buffer) {
+        int flags = buffer.getByte(pos);
+        long bytesRead = buffer.getLong(pos + 1);
+        long bytesWritten = buffer.getLong(pos + 9);
+        long duration = buffer.getLong(pos + 17);
+        long retryAfter = buffer.getLong(pos + 25);
+        int length = buffer.getInt(pos + 33);
+        String message = length == NULL_LENGTH ? null :
+                new String(buffer.getBytes(pos + 37, pos + 37 + length), StandardCharsets.UTF_8);
+        return new ProcessingResult((flags & FLAG_SUCCESS) != 0, (flags & FLAG_OVERLOADED) != 0,
+                message, bytesRead, bytesWritten, duration, retryAfter);
+    }
+
+    @Override
+    public ProcessingResult transform(ProcessingResult result) {
+        return result;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
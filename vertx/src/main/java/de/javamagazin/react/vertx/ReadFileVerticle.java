@@ -27,8 +27,15 @@ import io.vertx.core.logging.LoggerFactory;
  * </p>
  * <p>
  * The class listens on an address on the message bus for incoming requests
- * to read specific paths. The files are then read (and simply dumped to the
- * console).
+ * to read specific paths. The files are then read, and the caller gets a
+ * {@link ProcessingResult} with the number of bytes read.
+ * </p>
+ * <p>
+ * Files are read via the {@link FileCache} shared by all verticles; so
+ * frequently requested files that have not been changed are served from
+ * memory. Metrics about the read operations are recorded in the shared
+ * {@link FileMetrics} registry. The number of concurrent read operations
+ * is limited by {@link AdmissionControl}.
  * </p>
  */
 public class ReadFileVerticle extends AbstractVerticle {
@@ -42,10 +49,30 @@ public class ReadFileVerticle extends AbstractVerticle {
      */
     private static Logger LOG = LoggerFactory.getLogger(ReadFileVerticle.class);
 
+    /**
+     * The cache for file contents.
+     */
+    private FileCache cache;
+
+    /**
+     * The metrics for the address of this verticle.
+     */
+    private FileMetrics.AddressMetrics metrics;
+
+    /**
+     * The object limiting the number of concurrent requests.
+     */
+    private AdmissionControl admission;
+
     @Override
     public void start(Future<Void> startFuture) throws Exception {
         LOG.info("Starting ReadFileVerticle.");
-        vertx.eventBus().consumer(ADDR_READ_FILE, this::handleReadMessage);
+        ProcessingResultCodec.register(vertx);
+        cache = FileCache.getShared(vertx,
+                config().getLong(FileCache.CONFIG_CACHE_SIZE, FileCache.DEFAULT_CACHE_SIZE));
+        metrics = FileMetrics.getShared(vertx).forAddress(ADDR_READ_FILE);
+        admission = AdmissionControl.create(config(), this::handleReadMessage, metrics);
+        vertx.eventBus().consumer(ADDR_READ_FILE, admission);
         startFuture.complete();
     }
 
@@ -57,26 +84,31 @@ public class ReadFileVerticle extends AbstractVerticle {
      */
     private void handleReadMessage(Message<Object> msg) {
         String path = String.valueOf(msg.body());
-        LOG.info("Reading file " + path);
-        readFile(path);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Reading file " + path);
+        }
+        readFile(msg, path);
     }
 
     /**
-     * Reads and prints a file.
+     * Reads a file and sends the result to the caller.
      *
+     * @param msg  the message to be answered
      * @param path the path to the file to be read
      */
-    private void readFile(String path) {
-        final long startTime = System.currentTimeMillis();
-        vertx.fileSystem().readFile(path, res -> {
-            final long duration = System.currentTimeMillis() - startTime;
+    private void readFile(Message<Object> msg, String path) {
+        final long startTime = metrics.requestStarted();
+        cache.readFile(vertx, path, metrics.timed(FileMetrics.STAGE_READ, res -> {
+            final long duration = System.nanoTime() - startTime;
+            metrics.requestCompleted(startTime, res.succeeded());
+            admission.requestCompleted();
             if (res.succeeded()) {
-                String content = res.result().toString();
-                LOG.info(content);
-                LOG.info("Read " + content.length() + " bytes in " + duration + " ms.");
+                metrics.addBytesRead(res.result().length());
+                msg.reply(ProcessingResult.success("Read " + path, res.result().length(), 0,
+                        duration));
             } else {
-                LOG.error("Reading file failed!", res.cause());
+                msg.reply(ProcessingResult.failure("Read failed: " + res.cause(), duration));
             }
-        });
+        }));
     }
 }
@@ -15,40 +15,91 @@
  */
 package de.javamagazin.react.vertx;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 
 import io.vertx.core.AsyncResult;
 import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Verticle;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.shell.ShellService;
 import io.vertx.ext.shell.ShellServiceOptions;
+import io.vertx.ext.shell.command.Command;
+import io.vertx.ext.shell.command.CommandBuilder;
+import io.vertx.ext.shell.command.CommandRegistry;
 import io.vertx.ext.shell.term.TelnetTermOptions;
 
 /**
- * Main class starting up Vertx and deploying the demo verticles.
+ * Main class starting up Vertx and deploying the demo verticles. Optional
+ * command line arguments are the port of the Vertx shell and the number of
+ * instances to be deployed per verticle (which defaults to the number of
+ * available processors). If further arguments are passed, they are
+ * interpreted as directories to be watched by a
+ * {@link DirectoryWatchVerticle}.
  */
 public class VertxStartup {
+    /**
+     * The name of the shell command that displays file metrics.
+     */
+    private static final String CMD_FILE_METRICS = "file-metrics";
+
     public static void main(String[] args) throws InterruptedException {
         Vertx vertx = Vertx.vertx();
         int port = (args.length > 0) ? Integer.parseInt(args[0]) : 4000;
+        int instances = (args.length > 1) ? Integer.parseInt(args[1]) :
+                Runtime.getRuntime().availableProcessors();
+        List<Future<String>> additionalDeployments = new ArrayList<>();
+        if (args.length > 2) {
+            JsonArray directories = new JsonArray();
+            for (int i = 2; i < args.length; i++) {
+                directories.add(args[i]);
+            }
+            additionalDeployments.add(deployVerticle(vertx, DirectoryWatchVerticle.class,
+                    new DeploymentOptions().setConfig(new JsonObject()
+                            .put(DirectoryWatchVerticle.CONFIG_DIRECTORIES, directories))));
+        }
+        startup(vertx, port, instances, additionalDeployments);
+    }
+
+    /**
+     * Starts the shell and deploys the demo verticles on the given
+     * {@code Vertx} instance. This method blocks until the deployment is
+     * complete.
+     *
+     * @param vertx     the {@code Vertx} instance
+     * @param port      the port of the shell
+     * @param instances the number of instances per verticle
+     * @param additionalDeployments futures for further deployments to wait for
+     * @throws InterruptedException if waiting for the deployment is
+     *                              interrupted
+     */
+    static void startup(Vertx vertx, int port, int instances,
+                        List<Future<String>> additionalDeployments)
+            throws InterruptedException {
         ShellService service = ShellService.create(vertx,
                 new ShellServiceOptions()
                         .setTelnetOptions(new TelnetTermOptions()
                                 .setHost("localhost")
                                 .setPort(port)));
         service.start();
+        CommandRegistry.getShared(vertx).registerCommand(createMetricsCommand(vertx));
         System.out.println("Vertx shell available on telnet port " + port);
 
         System.out.println("Deploying test verticles.");
-        BlockingQueue<AsyncResult<CompositeFuture>> queue = new SynchronousQueue<>();
-        Future<String> res1 = deployVerticle(vertx, ReadFileVerticle.class);
-        Future<String> res2 = deployVerticle(vertx, ProcessFileVerticleCB.class);
-        Future<String> res3 = deployVerticle(vertx, ProcessFileVerticleFuture.class);
-        CompositeFuture.all(res1, res2, res3).setHandler(queue::offer);
+        BlockingQueue<AsyncResult<CompositeFuture>> queue = new ArrayBlockingQueue<>(1);
+        List<Future> deployments = new ArrayList<>(additionalDeployments);
+        deployments.add(deployVerticle(vertx, ReadFileVerticle.class, instances));
+        deployments.add(deployVerticle(vertx, ProcessFileVerticleCB.class, instances));
+        deployments.add(deployVerticle(vertx, ProcessFileVerticleFuture.class, instances));
+        deployments.add(deployVerticle(vertx, BatchProcessFileVerticle.class, instances));
+        CompositeFuture.all(deployments).setHandler(queue::offer);
         AsyncResult<CompositeFuture> deployResult = queue.poll(10, TimeUnit.SECONDS);
         if (deployResult == null) {
             System.out.println("Timeout on deployment!");
@@ -67,24 +118,59 @@ public class VertxStartup {
     /**
      * Deploys a verticle and returns a future for the result.
      *
+     * @param vert      the {@code Vertx} instance
+     * @param vertCls   the class of the verticle to be deployed
+     * @param instances the number of instances to deploy
+     * @param <T>       the type
+     * @return a future with the deployment result
+     */
+    private static <T extends Verticle> Future<String> deployVerticle(Vertx vert, Class<T> vertCls,
+                                                                     int instances) {
+        return deployVerticle(vert, vertCls, new DeploymentOptions().setInstances(instances));
+    }
+
+    /**
+     * Deploys a verticle with the given options and returns a future for the
+     * result.
+     *
      * @param vert    the {@code Vertx} instance
      * @param vertCls the class of the verticle to be deployed
+     * @param options the deployment options
      * @param <T>     the type
      * @return a future with the deployment result
      */
-    private static <T extends Verticle> Future<String> deployVerticle(Vertx vert, Class<T> vertCls) {
-        System.out.println("Deploying verticle " + vertCls.getName());
+    static <T extends Verticle> Future<String> deployVerticle(Vertx vert, Class<T> vertCls,
+                                                             DeploymentOptions options) {
+        System.out.println("Deploying " + options.getInstances() + " instance(s) of verticle "
+                + vertCls.getName());
         Future<String> future = Future.future();
-        vert.deployVerticle(vertCls.getName(), future);
+        vert.deployVerticle(vertCls.getName(), options, future);
         return future;
     }
 
+    /**
+     * Creates the shell command that displays the metrics collected by the
+     * demo verticles.
+     *
+     * @param vertx the {@code Vertx} instance
+     * @return the command
+     */
+    private static Command createMetricsCommand(Vertx vertx) {
+        FileMetrics metrics = FileMetrics.getShared(vertx);
+        return CommandBuilder.command(CMD_FILE_METRICS)
+                .processHandler(process -> {
+                    process.write(metrics.report());
+                    process.end();
+                })
+                .build(vertx);
+    }
+
     /**
      * Handler for closing Vertx.
      *
      * @param result the result of the close operation
      */
-    private static void closeHandler(AsyncResult<Void> result) {
+    static void closeHandler(AsyncResult<Void> result) {
         if (result.succeeded()) {
             System.out.println("Closed Vertx");
         } else {